@@ -0,0 +1,61 @@
+import benchmarks.Workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * gives the benchmarks access to RCLNetworkCreator, see Workload
+ */
+public class RCLWorkload implements Workload {
+    public void configure(String... args) {
+        if (!RCLNetworkCreator.readArgs(args))
+            throw new IllegalArgumentException(String.join(" ", args));
+    }
+
+    public Object generateRandomNetwork(int size, long seed) {
+        return RCLNetworkCreator.generateRandomNetwork(resistors(size), reactive(size), reactive(size), new SplittableRandom(seed));
+    }
+
+    public Object generateNetwork(int size, long seed) {
+        return RCLNetworkCreator.generateNetwork(resistors(size), reactive(size), reactive(size), new SplittableRandom(seed));
+    }
+
+    public Object simplifyNetwork(Object network) {
+        return RCLNetworkCreator.simplifyNetwork((RCLNetworkCreator.Network) network);
+    }
+
+    public void invalidate(Object network) {
+        //circuits come before their parts, so every invalidate stops at the circuit above
+        for (RCLNetworkCreator.Network n : ((RCLNetworkCreator.Network) network).getSubNetworks())
+            if (!n.isComponent())
+                ((RCLNetworkCreator.Circuit) n).invalidate();
+    }
+
+    public double getResistance(Object network) {
+        return ((RCLNetworkCreator.Network) network).getResistance(true);
+    }
+
+    public Object getValuesForParts(Object network) {
+        return ((RCLNetworkCreator.Network) network).getValuesForParts(true, 10);
+    }
+
+    public int getNumOfUselessResistors(Object network) {
+        return RCLNetworkCreator.getNumOfUselessResistors((RCLNetworkCreator.Network) network);
+    }
+
+    public void createExercise(int size, String name, long seed) {
+        configure("-nRes", resistors(size) + "", "-nCap", reactive(size) + "", "-nInd", reactive(size) + "");
+        RCLNetworkCreator.createExercise(name, new SplittableRandom(seed));
+    }
+
+    public void saveNetworkToFile(Object network, String filename, String format) {
+        RCLNetworkCreator.saveNetworkToFile((RCLNetworkCreator.Network) network, filename, format);
+    }
+
+    private static int resistors(int size) {
+        return size - 2 * reactive(size);
+    }
+
+    private static int reactive(int size) {
+        return size / 10;
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * creation of networks and exercises depending on how tight -maxComp and -maxUseless are
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConstraintBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+    @Param({"2", "4", "10"})
+    String maxComp;
+    @Param({"0", "3"})
+    String maxUseless;
+
+    Workload workload;
+    Path directory;
+    long seed;
+
+    @Setup
+    public void setup() throws IOException {
+        workload = Workload.load();
+        workload.configure("-maxComp", maxComp, "-maxUseless", maxUseless, "-image", "none");
+        directory = Files.createTempDirectory("rcl-bench");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try
+                {
+                    Files.delete(file);
+                } catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * one network, already satisfying the conditions most of the time
+     */
+    @Benchmark
+    public Object generateNetwork() {
+        return workload.generateNetwork(size, seed++);
+    }
+
+    /**
+     * a whole exercise without image, includes the networks rejected by the quality control and writing the text files
+     */
+    @Benchmark
+    public void createExercise() {
+        workload.createExercise(size, directory.resolve("exercise").toString(), seed++);
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * saving the image of a network in every format
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+    @Param({"png", "svg", "tikz"})
+    String format;
+
+    Workload workload;
+    Object network;
+    Path directory;
+
+    @Setup
+    public void setup() throws IOException {
+        workload = Workload.load();
+        network = workload.simplifyNetwork(workload.generateRandomNetwork(size, 0));
+        directory = Files.createTempDirectory("rcl-bench");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String extension : new String[]{".png", ".svg", ".tex"})
+            Files.deleteIfExists(directory.resolve("image" + extension));
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void saveNetworkToFile() {
+        workload.saveNetworkToFile(network, directory.resolve("image").toString(), format);
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generation, simplification and solving of random networks with 10 to 10k parts
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark {
+    /**
+     * a simplified network, like the networks of the exercises
+     */
+    @State(Scope.Thread)
+    public static class Networks {
+        @Param({"10", "100", "1000", "10000"})
+        int size;
+
+        Workload workload;
+        Object network;
+        long seed;
+
+        @Setup
+        public void setup() {
+            workload = Workload.load();
+            network = workload.simplifyNetwork(workload.generateRandomNetwork(size, 0));
+        }
+    }
+
+    /**
+     * a new unsimplified network for every call, simplifyNetwork changes it
+     */
+    @State(Scope.Thread)
+    public static class RawNetwork {
+        Workload workload;
+        Object network;
+
+        @Setup(Level.Invocation)
+        public void setup(Networks networks) {
+            workload = networks.workload;
+            network = workload.generateRandomNetwork(networks.size, networks.seed++);
+        }
+    }
+
+    /**
+     * drops the cached resistances of the simplified network before every call
+     */
+    @State(Scope.Thread)
+    public static class InvalidNetwork {
+        Workload workload;
+        Object network;
+
+        @Setup(Level.Invocation)
+        public void setup(Networks networks) {
+            workload = networks.workload;
+            network = networks.network;
+            workload.invalidate(network);
+        }
+    }
+
+    @Benchmark
+    public Object generateRandomNetwork(Networks networks) {
+        return networks.workload.generateRandomNetwork(networks.size, networks.seed++);
+    }
+
+    @Benchmark
+    public Object simplifyNetwork(RawNetwork raw) {
+        return raw.workload.simplifyNetwork(raw.network);
+    }
+
+    @Benchmark
+    public double getResistance(InvalidNetwork invalid) {
+        return invalid.workload.getResistance(invalid.network);
+    }
+
+    @Benchmark
+    public Object getValuesForParts(Networks networks) {
+        return networks.workload.getValuesForParts(networks.network);
+    }
+
+    @Benchmark
+    public int getNumOfUselessResistors(Networks networks) {
+        return networks.workload.getNumOfUselessResistors(networks.network);
+    }
+}
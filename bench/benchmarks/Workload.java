@@ -0,0 +1,54 @@
+package benchmarks;
+
+/**
+ * the operations of RCLNetworkCreator that are benchmarked. JMH can't generate code for classes in the default
+ * package and classes in a package can't use RCLNetworkCreator directly, so RCLWorkload implements this in the
+ * default package and the benchmarks only see networks as Object
+ */
+public interface Workload {
+    /**
+     * sets the parameters like the command line, e.g. configure("-maxComp", "4")
+     */
+    void configure(String... args);
+
+    /**
+     * creates a random network with size parts, 80% resistors and 10% capacitors and inductors each
+     */
+    Object generateRandomNetwork(int size, long seed);
+
+    /**
+     * creates a network like an exercise is created, already simplified and satisfying the configured conditions
+     */
+    Object generateNetwork(int size, long seed);
+
+    Object simplifyNetwork(Object network);
+
+    /**
+     * drops all cached resistances, so the next getResistance calculates the whole network
+     */
+    void invalidate(Object network);
+
+    double getResistance(Object network);
+
+    Object getValuesForParts(Object network);
+
+    int getNumOfUselessResistors(Object network);
+
+    /**
+     * creates a complete exercise with size parts like generateRandomNetwork and the configured conditions,
+     * including the quality control loop
+     */
+    void createExercise(int size, String name, long seed);
+
+    void saveNetworkToFile(Object network, String filename, String format);
+
+    static Workload load() {
+        try
+        {
+            return (Workload) Class.forName("RCLWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
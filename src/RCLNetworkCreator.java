@@ -1,66 +1,484 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
 import javax.imageio.ImageIO;
-import javax.swing.*;
-import java.awt.*;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
-public class RCLNetworkCreator extends JPanel {
-    private static int frameWidth = 1000;
-    private static int frameHeight = 1000;
-    //network parameters
-    private static int resistors = 7;
-    private static int capacitors = 1;
-    private static int inductors = 1;
-    private static int minPartValue = 5;
-    private static int maxPartValue = 20;
-    private static int minVoltage = 2;
-    private static int maxVoltage = 12;
-    private static int maxComponentsPerCircuit = (resistors + capacitors + inductors) / 3;
-    private static int maxUselessResistors = 3; //how many resistors are allowed to be shorted etc.
-    private static String tConf = "both"; //evaluation time
-    //visual parameters
-    private static int cWidth = 25;
-    private static int cHeight = 50;
-    private static int lineLength = 15;
+public class RCLNetworkCreator {
+    //network, evaluation and visual parameters of all exercises of this run
+    private static Settings settings = new Settings(7, 1, 1, 5, 20, 2, 12, Settings.getDefaultMaxComp(7 + 1 + 1), 3, "both", "png", 25, 50, 15, false);
+    //batch parameters
+    private static int count = 1; //networks per run
+    private static int threads = 1;
+    private static long seed = new SplittableRandom().nextLong(); //every exercise gets its own random numbers from seed
+    private static boolean seedGiven = false; //a random seed is reported, so the exercises can be created again
+    private static int id = -1; //first exercise to regenerate, -1 creates new exercises
+    private static String metricsFile = null; //JSON summary of attempts and stage times, not written if null
+    private static int port = -1; //answer requests for exercises on this port instead of creating files
+    private static int poolSize = 0; //exercises kept ready for every parameter set when answering requests
+    private static int poolSets = 16; //parameter sets the pool keeps exercises for, the least recently used is dropped
+    private static HashIndex hashIndex = null; //hashes of all exercises created so far, null if duplicates are allowed
+    private static int variants = 1; //value sets saved for every network, all with the same image
+    private static String archiveFile = null; //append all exercises to this file instead of saving single files
+    private static int extract = -1; //exercise to copy from the archive into single files, -1 creates exercises
+    private static Archive archive = null;
+    private static String netlistFile = null; //solve this netlist instead of creating exercises
+    private static double transientEnd = 0; //simulate every circuit until this time in s, 0 doesn't simulate
+    private static int transientSteps = 200;
+    private static String curves = "csv"; //save the simulation as "csv", "plot" (image) or "both"
+    //circuits with at least this many networks are solved, measured and drawn in parallel, 0 never splits
+    private static int parallelThreshold = 5000;
+    private static SolutionWriter format = SolutionWriter.TEXT; //format of the task and solution files
+    private static String profilesFile = null; //named parameter sets, count exercises are created for each of them
+    private static List<String> profileNames = null; //profiles of the file to use, null uses all
+    static final Metrics metrics = new Metrics();
 
     public static void main(String[] args) {
         if (!readArgs(args))
             return;
+        if (port >= 0)
+        {
+            ExerciseServer.start(port);
+            return;
+        }
+        if (extract >= 0)
+        {
+            if (!Archive.extract(archiveFile, extract))
+                System.err.println("Exercise " + extract + " is not in " + archiveFile);
+            return;
+        }
+        if (netlistFile != null)
+        {
+            try
+            {
+                solveNetlist(netlistFile);
+            } catch (IllegalArgumentException e)
+            {
+                System.err.println(e.getMessage());
+            }
+            return;
+        }
+        //check profiles before any number is used, conditions no network meets would never finish
+        ArrayList<Plan> plans;
+        try
+        {
+            plans = profilesFile == null ? new ArrayList<>(List.of(Plan.unchecked(settings)))
+                    : Plan.readProfiles(profilesFile, settings, profileNames);
+        } catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            return;
+        }
+        int total = count * plans.size();
         //read config (just saves number of generated network for numbering)
-        String conf = readConfig();
+        int first = id < 0 ? reserveNumbers(total) : id;
+        if (!seedGiven)
+            System.err.println("seed " + seed + (first < 0 ? "" : ", create exercise n again with -seed " + seed + " -id n"));
+        if (archiveFile != null)
+        {
+            if (first < 0)
+            {
+                System.err.println("The archive needs the config file to number the exercises");
+                return;
+            }
+            archive = new Archive(archiveFile);
+        }
 
-        //build network
-        Network n;
-        do //loop until output satisfies all quality control conditions
+        try
+        {
+            if (total == 1)
+                createExercise(plans.get(0), getExerciseName(first, 0, total), getRandom(first, 0));
+            else
+                createBatch(first, plans);
+        } catch (IllegalStateException e) //no (new) network found, the exercises created before are kept
+        {
+            System.err.println(e.getMessage() + (total == 1 ? ", no exercise was created" : ""));
+        } finally
+        {
+            if (metricsFile != null)
+                metrics.saveToFile(metricsFile);
+            if (hashIndex != null)
+                hashIndex.close();
+            if (archive != null)
+                archive.close();
+        }
+    }
+
+    /**
+     * creates count exercises of every plan starting with number first on threads threads, the exercises of a plan
+     * get consecutive numbers in the order of plans. If an exercise finds no (new) network, the others are still
+     * finished and an IllegalStateException tells how many were created
+     */
+    static void createBatch(int first, ArrayList<Plan> plans) {
+        //every exercise is independent, the numbers were reserved as one block
+        int total = count * plans.size();
+        metrics.usedThreads = Math.min(threads, total);
+        ExecutorService pool = Executors.newFixedThreadPool(metrics.usedThreads);
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < total; i++)
+        {
+            Plan plan = plans.get(i / count);
+            String name = getExerciseName(first, i, total);
+            SplittableRandom random = getRandom(first, i);
+            results.add(pool.submit(() -> createExercise(plan, name, random)));
+        }
+        pool.shutdown();
+        int created = 0;
+        IllegalStateException notFound = null;
+        try
+        {
+            for (Future<?> result : results)
+            {
+                try
+                {
+                    result.get();
+                    created++;
+                } catch (ExecutionException e)
+                {
+                    if (!(e.getCause() instanceof IllegalStateException cause))
+                        throw e;
+                    if (notFound == null)
+                        notFound = cause;
+                }
+            }
+        } catch (Exception e)
         {
-            n = generateRandomNetwork(resistors, capacitors, inductors);
-            n = simplifyNetwork(n);
-        } while (n.getMaxComponentsPerCircuit() > maxComponentsPerCircuit || getNumOfUselessResistors(n) > maxUselessResistors);
+            pool.shutdownNow();
+            throw new RuntimeException(e);
+        }
+        if (notFound != null)
+            throw new IllegalStateException(notFound.getMessage() + ", " + created + " of " + total + " exercises were created");
+    }
+
+    /**
+     * generates, solves and saves one network with the settings of this run, see createExercise(Settings, ...)
+     */
+    public static void createExercise(String name, SplittableRandom random) {
+        createExercise(settings, name, random);
+    }
+
+    /**
+     * generates, solves and saves one network, all files are prefixed with name. All random decisions are taken
+     * from random, so the same random numbers and settings create the same exercise
+     */
+    public static void createExercise(Settings s, String name, SplittableRandom random) {
+        createExercise(Plan.unchecked(s), name, random);
+    }
+
+    /**
+     * like createExercise(Settings, ...), fails if the network takes far more attempts than the plan expects
+     */
+    static void createExercise(Plan plan, String name, SplittableRandom random) {
+        Settings s = plan.settings();
+        Exercise exercise = generateExercise(s, name, random, plan.maxAttempts());
+        //files of the exercise, only collected in memory for the archive
+        LinkedHashMap<String, byte[]> files = archive == null ? null : new LinkedHashMap<>();
 
-        //save network
-        boolean t0 = tConf.equals("t0");
-        int voltage = (int) (Math.random() * (maxVoltage - minVoltage) + minVoltage);
-        saveValuesToFile(n, voltage, true, conf + " Task", false);
-        if (tConf.equals("both"))
+        //save network, variants are numbered name-1, name-2, ...
+        for (int variant = 1; variant <= variants; variant++)
         {
-            saveValuesToFile(n, voltage, true, conf + " t0 Solution", true);
-            saveValuesToFile(n, voltage, false, conf + " tInf Solution", true);
+            if (variant > 1)
+                exercise = createVariant(exercise, s, name, random);
+            String prefix = variants == 1 ? name : name + "-" + variant;
+            StageEvent stage = metrics.begin(Metrics.WRITE, name);
+            for (String text : exercise.getTextNames(s))
+            {
+                //default charset like FileWriter, so archived files are the same as the ones saved directly
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(openFile(files, prefix + " " + text + format.getExtension()))))
+                {
+                    exercise.writeText(text, format, writer);
+                } catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+            metrics.end(stage);
+            if (transientEnd > 0)
+                saveTransient(Netlist.of(exercise.network, exercise.voltage), s, name, prefix, files);
         }
-        else
-            saveValuesToFile(n, voltage, t0, conf + " " + tConf + " Solution", true);
         //show network
         /*
+        Network shown = exercise.network;
         JFrame frame = new JFrame();
-        frame.setSize(frameWidth, frameHeight);
+        frame.setSize(1000, 1000);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.add(n);
+        frame.add(new JPanel() {
+            public void paintComponent(Graphics g) {
+                shown.paint(new GraphicsCanvas(g), s);
+            }
+        });
         frame.setVisible(true);
         */
 
-        saveNetworkToFile(n, conf + " Image");
+        if (!s.imageConf.equals("none")) //the image only shows names, so it is the same for all variants
+        {
+            StageEvent stage = metrics.begin(Metrics.RENDER, name);
+            try (OutputStream out = new BufferedOutputStream(openFile(files, name + " Image" + getImageExtension(s))))
+            {
+                writeImage(exercise.network, s, out);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            metrics.end(stage);
+        }
+        if (files != null)
+        {
+            StageEvent stage = metrics.begin(Metrics.WRITE, name);
+            archive.add(Integer.parseInt(name), files); //with the config the names are the numbers, see main
+            metrics.end(stage);
+        }
+    }
+
+    /**
+     * solves the netlist in filename at the times of the settings and saves the solutions next to it
+     */
+    static void solveNetlist(String filename) {
+        Netlist netlist = Netlist.read(filename);
+        for (boolean t0 : new boolean[]{true, false})
+        {
+            if (settings.tConf.equals(t0 ? "tInf" : "t0"))
+                continue;
+            NetlistSolution solution = netlist.solve(t0);
+            try (FileWriter writer = new FileWriter(filename + (t0 ? " t0" : " tInf") + " Solution.txt"))
+            {
+                writeNetlistValues(writer, netlist, solution);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+        if (transientEnd > 0)
+            saveTransient(netlist, settings, filename, filename, null);
+    }
+
+    /**
+     * simulates netlist and saves the curves as "prefix Transient.csv" and/or as image, see -curves
+     */
+    static void saveTransient(Netlist netlist, Settings s, String name, String prefix, Map<String, byte[]> files) {
+        StageEvent stage = metrics.begin(Metrics.SOLVE, name);
+        TransientSolution values = netlist.simulate(transientEnd, transientSteps);
+        metrics.end(stage);
+        if (!curves.equals("plot"))
+        {
+            stage = metrics.begin(Metrics.WRITE, name);
+            try (Writer writer = new OutputStreamWriter(openFile(files, prefix + " Transient.csv")))
+            {
+                writeTransient(writer, netlist, values);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            metrics.end(stage);
+        }
+        if (!curves.equals("csv") && !s.imageConf.equals("none"))
+        {
+            stage = metrics.begin(Metrics.RENDER, name);
+            try (OutputStream out = new BufferedOutputStream(openFile(files, prefix + " Transient" + getImageExtension(s))))
+            {
+                writeImage(new TransientPlot(netlist, values), s, out);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            metrics.end(stage);
+        }
+    }
+
+    /**
+     * writes the simulation as CSV, one line for every time: the time, voltage and current of every branch and the
+     * current of every source, sorted by name
+     */
+    static void writeTransient(Writer writer, Netlist netlist, TransientSolution values) throws IOException {
+        int count = netlist.branches.size();
+        Integer[] order = netlist.getNameOrder();
+        StringBuilder line = new StringBuilder("t");
+        for (int i : order)
+        {
+            if (i < count)
+                line.append(',').append(netlist.getName(i)).append(" V,").append(netlist.getName(i)).append(" I");
+            else
+                line.append(',').append(netlist.getName(i)).append(" I");
+        }
+        writer.write(line.append('\n').toString());
+        for (int k = 0; k < values.time().length; k++)
+        {
+            line.setLength(0);
+            line.append(values.time()[k]);
+            for (int i : order)
+            {
+                if (i < count)
+                    line.append(',').append(values.voltage()[k][i]).append(',').append(values.current()[k][i]);
+                else
+                    line.append(',').append(values.sourceCurrent()[k][i - count]);
+            }
+            writer.write(line.append('\n').toString());
+        }
+    }
+
+    /**
+     * writes resistance, voltage and current of every branch and source of netlist, sorted by name. Voltages and
+     * currents are signed, they go from the first to the second node of the line in the netlist
+     */
+    static void writeNetlistValues(Writer writer, Netlist netlist, NetlistSolution values) throws IOException {
+        Solution branches = values.branches();
+        int count = branches.components.length;
+        writer.write("component: [Resistance, Voltage, Current]\n");
+        for (int i : netlist.getNameOrder())
+        {
+            if (i < count)
+                writer.write(branches.components[i].name + ": [" + round(branches.resistance[i]) + ", " + round(branches.voltage[i]) + ", " + round(branches.current[i]) + "]\n");
+            else
+            {
+                Netlist.Source source = netlist.sources.get(i - count);
+                writer.write(source.name() + ": [0.0, " + round(source.voltage()) + ", " + round(values.sourceCurrent()[i - count]) + "]\n");
+            }
+        }
+    }
+
+    /**
+     * opens the file filename, or a buffer that is added to files when it is closed if files isn't null
+     */
+    static OutputStream openFile(Map<String, byte[]> files, String filename) throws IOException {
+        if (files == null)
+            return new FileOutputStream(filename);
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                files.put(filename, toByteArray());
+            }
+        };
+    }
+
+    /**
+     * gives every resistor of exercise a new random resistance and picks a new voltage, the network and the
+     * solutions of exercise are changed and used for the new exercise. This is a full solve, only generating,
+     * simplifying, the checks and the image are saved. The quality control conditions don't depend on the values
+     */
+    static Exercise createVariant(Exercise exercise, Settings s, String name, SplittableRandom random) {
+        Component[] components = exercise.solutions[0].components;
+        int voltage;
+        for (int attempts = 1; ; attempts++)
+        {
+            voltage = randomInt(random, s.minVoltage, s.maxVoltage);
+            for (Component component : components)
+                if (component instanceof Resistor)
+                    ((Resistor) component).setResistance(randomInt(random, s.minPartValue, s.maxPartValue));
+            if (hashIndex == null || !hashIndex.values || hashIndex.add(hashIndex.getHash(exercise.network, voltage)))
+                break;
+            if (attempts >= 1000)
+                throw new IllegalStateException("no new values found in 1000 attempts");
+        }
+        StageEvent stage = metrics.begin(Metrics.SOLVE, name);
+        exercise.network.solveBoth(voltage, exercise.solutions[0], voltage, exercise.solutions[1]);
+        metrics.end(stage);
+        return exercise.withVoltage(voltage);
+    }
+
+    /**
+     * generates and solves one network that satisfies all quality control conditions of s, name is only used for
+     * the metrics
+     */
+    static Exercise generateExercise(Settings s, String name, SplittableRandom random) {
+        return generateExercise(s, name, random, Integer.MAX_VALUE);
+    }
+
+    /**
+     * like generateExercise, but throws an exception if no network meets -maxComp and -maxUseless in maxAttempts
+     */
+    static Exercise generateExercise(Settings s, String name, SplittableRandom random, int maxAttempts) {
+        int voltage = randomInt(random, s.minVoltage, s.maxVoltage);
+        //build network
+        Network n;
+        Solution[] solutions; //both evaluation times, solved once and used for quality control and all files
+        ExerciseEvent exercise = new ExerciseEvent();
+        exercise.begin();
+        exercise.name = name;
+        while (true) //loop until output satisfies all quality control conditions
+        {
+            if (exercise.attempts - exercise.rejectedDuplicate >= maxAttempts)
+                throw new IllegalStateException("no network met -maxComp and -maxUseless in " + maxAttempts + " attempts");
+            exercise.attempts++;
+            StageEvent stage = metrics.begin(Metrics.GENERATE, name);
+            n = generateNetwork(s, random); //already simplified and satisfies the conditions
+            boolean tooLarge = n.getMaxComponentsPerCircuit() > s.maxComponentsPerCircuit;
+            long hash = hashIndex == null ? 0 : hashIndex.getHash(n, voltage);
+            boolean duplicate = hashIndex != null && hashIndex.contains(hash); //checked before any work is spent on it
+            metrics.end(stage);
+            if (tooLarge)
+            {
+                exercise.rejectedMaxComp++;
+                continue;
+            }
+            if (duplicate)
+            {
+                exercise.rejectedDuplicate++;
+                if (exercise.rejectedDuplicate >= 1000)
+                    throw new IllegalStateException("no new exercise found in 1000 attempts, all networks with these parameters may exist already");
+                continue;
+            }
+            stage = metrics.begin(Metrics.SOLVE, name);
+            solutions = n.solveBoth(voltage);
+            //which resistors have no voltage doesn't depend on the voltage, unless there is none at all
+            boolean useful = getNumOfUselessResistors(voltage == 0 ? n.solve(true, 5) : solutions[0]) <= s.maxUselessResistors;
+            metrics.end(stage);
+            if (!useful)
+                exercise.rejectedUseless++;
+            else if (hashIndex != null && !hashIndex.add(hash)) //another thread created the same exercise meanwhile
+                exercise.rejectedDuplicate++;
+            else
+                break;
+        }
+        metrics.add(exercise);
+        return new Exercise(n, voltage, solutions);
     }
 
     public static boolean readArgs(String[] args) {
@@ -70,51 +488,90 @@ public class RCLNetworkCreator extends JPanel {
             for (int i = 0; i < args.length; i += 2)
                 map.put(args[i], args[i + 1]);
 
-            if (map.containsKey("-nRes"))
-                resistors = Integer.parseInt(map.remove("-nRes"));
-            if (map.containsKey("-nCap"))
-                capacitors = Integer.parseInt(map.remove("-nCap"));
-            if (map.containsKey("-nInd"))
-                inductors = Integer.parseInt(map.remove("-nInd"));
-            if (map.containsKey("-minPart"))
-                minPartValue = Integer.parseInt(map.remove("-minPart"));
-            if (map.containsKey("-maxPart"))
-                maxPartValue = Integer.parseInt(map.remove("-maxPart"));
-            if (map.containsKey("-minV"))
-                minVoltage = Integer.parseInt(map.remove("-minV"));
-            if (map.containsKey("-maxV"))
-                maxVoltage = Integer.parseInt(map.remove("-maxV"));
-            if (map.containsKey("-maxComp"))
-                maxComponentsPerCircuit = Integer.parseInt(map.remove("-maxComp"));
-            if (map.containsKey("-maxUseless"))
-                maxUselessResistors = Integer.parseInt(map.remove("-maxUseless"));
-            if (map.containsKey("-cWidth"))
-                cWidth = Integer.parseInt(map.remove("-cWidth"));
-            if (map.containsKey("-cHeight"))
-                cHeight = Integer.parseInt(map.remove("-cHeight"));
-            if (map.containsKey("-lines"))
-                lineLength = Integer.parseInt(map.remove("-lines"));
-            if (map.containsKey("-time"))
-                tConf = map.remove("-time");
-            if (!map.isEmpty() || !(tConf.equals("t0") || tConf.equals("tInf") || tConf.equals("both")))
+            settings = Settings.read(map, settings);
+            if (map.containsKey("-metrics"))
+                metricsFile = map.remove("-metrics");
+            if (map.containsKey("-count"))
+                count = Integer.parseInt(map.remove("-count"));
+            if (map.containsKey("-threads"))
+                threads = Integer.parseInt(map.remove("-threads"));
+            if (map.containsKey("-id"))
+            {
+                if (!map.containsKey("-seed")) //regenerating needs the seed of the original run
+                    throw new IllegalArgumentException();
+                id = Integer.parseInt(map.remove("-id"));
+            }
+            if (map.containsKey("-seed"))
+            {
+                seed = Long.parseLong(map.remove("-seed"));
+                seedGiven = true;
+            }
+            if (map.containsKey("-unique"))
+            {
+                String unique = map.remove("-unique");
+                if (!unique.equals("topology") && !unique.equals("values"))
+                    throw new IllegalArgumentException();
+                //exercises created again with -id are in the index already, they must not be rejected
+                if (id < 0)
+                    hashIndex = new HashIndex(unique + " hashes", unique.equals("values"));
+            }
+            if (map.containsKey("-variants"))
+                variants = Integer.parseInt(map.remove("-variants"));
+            if (map.containsKey("-archive"))
+                archiveFile = map.remove("-archive");
+            if (map.containsKey("-extract"))
+                extract = Integer.parseInt(map.remove("-extract"));
+            if (map.containsKey("-netlist"))
+                netlistFile = map.remove("-netlist");
+            if (map.containsKey("-transient"))
+                transientEnd = Double.parseDouble(map.remove("-transient"));
+            if (map.containsKey("-steps"))
+                transientSteps = Integer.parseInt(map.remove("-steps"));
+            if (map.containsKey("-curves"))
+                curves = map.remove("-curves");
+            if (map.containsKey("-profiles"))
+                profilesFile = map.remove("-profiles");
+            if (map.containsKey("-profile"))
+                profileNames = List.of(map.remove("-profile").split(","));
+            if (map.containsKey("-format"))
+                format = SolutionWriter.of(map.remove("-format"));
+            if (map.containsKey("-parallelThreshold"))
+                parallelThreshold = Integer.parseInt(map.remove("-parallelThreshold"));
+            if (map.containsKey("-serve"))
+                port = Integer.parseInt(map.remove("-serve"));
+            if (map.containsKey("-pool"))
+                poolSize = Integer.parseInt(map.remove("-pool"));
+            if (map.containsKey("-poolSets"))
+                poolSets = Integer.parseInt(map.remove("-poolSets"));
+            if (!map.isEmpty() || count < 1 || threads < 1 || variants < 1 || poolSize < 0 || poolSets < 1
+                    || (extract >= 0 && archiveFile == null) || !(transientEnd >= 0) || transientSteps < 1
+                    || parallelThreshold < 0
+                    || (profileNames != null && profilesFile == null)
+                    || !List.of("csv", "plot", "both").contains(curves))
                 throw new IllegalArgumentException();
         } catch (Exception e)
         {
-            System.err.println("""
-                    Wrong arguments, options are:
-                    -nRes: number of resistors
-                    -nCap: number of capacitors
-                    -nInd: number of inductors
-                    -minPart: minimum resistance value
-                    -maxPart: maximum resistance value
-                    -minV: minimum voltage
-                    -maxV: maximum voltage
-                    -maxComp: maximum components per circuit
-                    -maxUseless: maximum shorted resistors
-                    -cWidth: width of component
-                    -cHeight: height of component
-                    -lines: length of vertical connections
-                    -time: "t0"=evaluate at t0, "tInf": evaluate at settled state, default=do both
+            System.err.println("Wrong arguments, options are:\n" + Settings.OPTIONS + """
+                    -metrics: file for a JSON summary of attempts, rejected networks and time per stage
+                    -count: number of networks to create
+                    -threads: number of networks created in parallel
+                    -seed: start value for all random numbers, the same seed and options create the same exercises
+                    -id: number of the first exercise to create again, needs the -seed of the original run
+                    -variants: number of value sets for every network, saved as number-1, number-2, ... with one image
+                    -unique: "topology"=never create the same circuit twice, "values": never create the same circuit with the same values twice
+                    -archive: file to append all files of the exercises to instead of saving them one by one
+                    -extract: number of an exercise to save from the -archive as single files
+                    -netlist: file with a SPICE-like netlist to solve instead of creating exercises
+                    -transient: simulate every circuit from switching on the voltage until this time in s
+                    -steps: number of time steps of -transient, default=200
+                    -curves: save the simulation as "csv", as image "plot" (format of -image) or "both", default=csv
+                    -profiles: file with named option sets, one per line "name: -nRes 5 -maxComp 3 ...", creates -count exercises of each
+                    -profile: with -profiles, names of the profiles to use separated by ",", default=all
+                    -format: format of the task and solution files: "text", "jsonl", "csv" or "latex", default=text
+                    -parallelThreshold: circuits with at least this many parts (all levels) are split across cores, 0=never, default=5000
+                    -serve: port to answer requests for exercises on instead of saving files
+                    -pool: exercises kept ready for every parameter set requested from -serve, default=0
+                    -poolSets: parameter sets the pool keeps exercises for, default=16
                     """
             );
             return false;
@@ -122,48 +579,80 @@ public class RCLNetworkCreator extends JPanel {
         return true;
     }
 
-    static String readConfig() {
-        String data = "";
-        try
+    /**
+     * reserves amount consecutive numbers in the config file and returns the first one, -1 if the config can't be used.
+     * The config is locked while it is updated so parallel runs never get the same numbers
+     */
+    static int reserveNumbers(int amount) {
+        try (RandomAccessFile file = new RandomAccessFile("config", "rw"); FileChannel channel = file.getChannel())
         {
-            File f = new File("config");
-            if (f.isFile())
+            FileLock lock = channel.lock();
+            try
             {
-                Scanner myReader = new Scanner(f);
-                data = myReader.nextLine();
-                int num = Integer.parseInt(data);
-                num++;
-                FileWriter writer = new FileWriter("config");
-                writer.write(num + "");
-                writer.close();
-                data = num + "";
-                myReader.close();
-            }
-            else //no config, create
+                String data = file.readLine(); //null if there is no config yet
+                int last = data == null ? 0 : Integer.parseInt(data.trim());
+                file.setLength(0);
+                file.writeBytes((last + amount) + "");
+                return last + 1;
+            } finally
             {
-                FileWriter writer = new FileWriter("config");
-                writer.write("1");
-                data = "1";
-                writer.close();
+                lock.release();
             }
-
-            return data;
         } catch (Exception e)
         {
-            return "default";//program should at least work without saving old networks
+            return -1;//program should at least work without saving old networks
         }
     }
 
+    /**
+     * returns the random numbers for one exercise, they only depend on seed and the number of the exercise, so
+     * batch workers never share a generator and every exercise can be created again from its number
+     */
+    static SplittableRandom getRandom(int first, int index) {
+        return getRandom(seed, first < 0 ? index : first + index);
+    }
+
+    /**
+     * returns the random numbers for the exercise with the given number of a run with the given seed. The seed is
+     * mixed before the number is added, so close seeds don't share exercises (with seed + number, exercise 2 of
+     * seed 1 was exercise 1 of seed 2)
+     */
+    static SplittableRandom getRandom(long seed, long number) {
+        return new SplittableRandom(new SplittableRandom(new SplittableRandom(seed).nextLong() + number).nextLong());
+    }
+
+    /**
+     * returns a random number between min (inclusive) and max (exclusive), or min if max isn't larger
+     */
+    static int randomInt(SplittableRandom random, int min, int max) {
+        return (int) (random.nextDouble() * (max - min)) + min;
+    }
+
+    static <T> void shuffle(ArrayList<T> list, SplittableRandom random) {
+        for (int i = list.size() - 1; i > 0; i--)
+            Collections.swap(list, i, random.nextInt(i + 1));
+    }
+
+    static String getExerciseName(int first, int index, int total) {
+        if (first < 0)
+            return total == 1 ? "default" : "default " + (index + 1);
+        return (first + index) + "";
+    }
+
     public static Network generateRandomNetwork(int numberR, int numberC, int numberI) {
+        return generateRandomNetwork(numberR, numberC, numberI, new SplittableRandom());
+    }
+
+    public static Network generateRandomNetwork(int numberR, int numberC, int numberI, SplittableRandom random) {
         ArrayList<Network> components = new ArrayList<>();
         for (int i = 0; i < numberR; i++)
-            components.add(new Resistor("R" + i, (int) (Math.random() * (maxPartValue - minPartValue)) + minPartValue));
+            components.add(new Resistor("R" + i, randomInt(random, settings.minPartValue, settings.maxPartValue)));
         for (int i = 0; i < numberC; i++)
-            components.add(new Capacitor("C" + i, (int) (Math.random() * (maxPartValue - minPartValue)) + minPartValue));
+            components.add(new Capacitor("C" + i, randomInt(random, settings.minPartValue, settings.maxPartValue)));
         for (int i = 0; i < numberI; i++)
-            components.add(new Inductor("L" + i, (int) (Math.random() * (maxPartValue - minPartValue)) + minPartValue));
+            components.add(new Inductor("L" + i, randomInt(random, settings.minPartValue, settings.maxPartValue)));
 
-        boolean parallel = !(Math.random() > 0.5); //what is the highest network type
+        boolean parallel = random.nextBoolean(); //what is the highest network type
         while (components.size() > 1)
         {
             //select type
@@ -173,12 +662,16 @@ public class RCLNetworkCreator extends JPanel {
             else
                 nt = new Serial(null);
             //select components
-            int numComp = 2 + (int) (Math.random() * (components.size() - 2)) % maxComponentsPerCircuit;
+            int numComp = 2 + (int) (random.nextDouble() * (components.size() - 2)) % settings.maxComponentsPerCircuit;
             for (int i = 0; i < numComp; i++)
             {
-                int c = (int) (Math.random() * components.size());
+                int c = random.nextInt(components.size());
+                //replace the selected part by the last one, removing from the end doesn't shift the list
+                Network part = components.get(c);
+                components.set(c, components.get(components.size() - 1));
+                components.remove(components.size() - 1);
                 //if (nt.getMaxComponentsPerCircuit() < maxComponentsPerCircuit || !components.get(c).isComponent())
-                nt.add(components.remove(c)); //todo make performant
+                nt.add(part);
                 //else i--;
             }
             components.add(nt);
@@ -187,396 +680,3901 @@ public class RCLNetworkCreator extends JPanel {
         return components.get(0);
     }
 
+    /**
+     * builds a random network that already satisfies maxComponentsPerCircuit and maxUselessResistors, so no network has
+     * to be thrown away. First the resistors get arranged in alternating Serial and Parallel circuits (nothing to
+     * simplify), then capacitors and inductors are inserted one by one. Most of them are inserted where they don't
+     * change any resistance at t0 (capacitor in series, inductor in parallel), the others are inserted anywhere if
+     * the number of useless resistors stays within the limit.
+     */
+    public static Network generateNetwork(int numberR, int numberC, int numberI, SplittableRandom random) {
+        return generateNetwork(settings.withComponents(numberR, numberC, numberI), random);
+    }
 
     /**
-     * resolves nesting of nonComponents of the same Type, Parallel(Parallel(R1,R2),R2) -> Parallel(R1,R2,R3)
+     * builds a network with the components, part values and conditions of s, see above
      */
-    public static Network simplifyNetwork(Network network) {
-        if (Component.class.isAssignableFrom(network.getClass())) //is component
-            return network;
+    public static Network generateNetwork(Settings s, SplittableRandom random) {
+        int numberR = s.resistors;
+        int maxComp = s.maxComponentsPerCircuit;
+        int maxUseless = s.maxUselessResistors;
+        ArrayList<Network> resistorList = new ArrayList<>();
+        ArrayList<Component> reactive = new ArrayList<>();
+        for (int i = 0; i < numberR; i++)
+            resistorList.add(new Resistor("R" + i, randomInt(random, s.minPartValue, s.maxPartValue)));
+        for (int i = 0; i < s.capacitors; i++)
+            reactive.add(new Capacitor("C" + i, randomInt(random, s.minPartValue, s.maxPartValue)));
+        for (int i = 0; i < s.inductors; i++)
+            reactive.add(new Inductor("L" + i, randomInt(random, s.minPartValue, s.maxPartValue)));
+        shuffle(resistorList, random);
+        shuffle(reactive, random);
 
-        Circuit nt = (Circuit) network;
-        ArrayList<Network> toAdd = new ArrayList<>();
-        ArrayList<Network> toRemove = new ArrayList<>();
-        for (Network n : nt.getContent()) //simplify lower levels
+        if (numberR == 0) //nothing can become useless
+            return buildShape(new ArrayList<>(reactive), 0, reactive.size(), random.nextBoolean(), new ArrayList<>(), maxComp, random);
+
+        ArrayList<Circuit> circuits = new ArrayList<>();
+        Network root = buildShape(resistorList, 0, numberR, random.nextBoolean(), circuits, maxComp, random);
+        ArrayList<Network> nodes = new ArrayList<>(resistorList); //everything a part can be connected to
+        nodes.addAll(circuits);
+        boolean check = numberR > maxUseless; //with less resistors the limit can't be exceeded
+        int useless = check ? getNumOfUselessResistors(root) : 0;
+        int checked = 0; //placements that needed a solve, limited so large networks stay fast
+        for (Component part : reactive)
         {
-            n = simplifyNetwork(n); //simplify recursively
-            if (nt.getClass() == n.getClass())
+            nodes.add(part);
+            if ((!check || (useless < maxUseless && checked < maxUseless + 3)) && random.nextBoolean())
             {
-                toAdd.addAll(((Circuit) n).getContent());
-                toRemove.add(n);
+                Circuit target = getRandomCircuit(circuits, maxComp, random);
+                if (target != null)
+                {
+                    target.add(part);
+                    int res = 0;
+                    if (check)
+                    {
+                        res = getNumOfUselessResistors(root);
+                        checked++;
+                    }
+                    if (res <= maxUseless)
+                    {
+                        useless = res;
+                        continue;
+                    }
+                    target.removeAll(Collections.singletonList(part));
+                }
             }
+            root = insertNeutral(root, part, nodes, circuits, maxComp, random);
         }
-        nt.removeAll(toRemove);
-        nt.addAll(toAdd);
-        return nt;
+        return root;
     }
 
-    public static int getNumOfUselessResistors(Network network) {
-        HashMap<String, ArrayList<Double>> values = network.getValuesForParts(true, 5);
-        int res = 0;
-        for (String key : values.keySet())
-            if (key.charAt(0) == 'R') //is resistor
-                if (values.get(key).get(1) == 0.0) //has no voltage
-                    res++;
-        return res;
-    }
+    /**
+     * arranges leaves[from, to) in a tree of alternating circuits, with no more than maxComp components in each
+     * circuit. All created circuits are added to circuits
+     */
+    static Network buildShape(ArrayList<Network> leaves, int from, int to, boolean parallel, ArrayList<Circuit> circuits,
+                              int maxComp, SplittableRandom random) {
+        if (to - from == 1)
+            return leaves.get(from);
+        Circuit root = parallel ? new Parallel(null) : new Serial(null);
+        //circuits that still have to be filled and their range of leaves, no recursion so the depth is not limited
+        ArrayDeque<Circuit> open = new ArrayDeque<>();
+        ArrayDeque<int[]> ranges = new ArrayDeque<>();
+        open.push(root);
+        ranges.push(new int[]{from, to});
+        while (!open.isEmpty())
+        {
+            Circuit nt = open.pop();
+            int[] range = ranges.pop();
+            int n = range[1] - range[0];
+            circuits.add(nt);
 
-    public static void saveNetworkToFile(Network n, String filename) {
-        BufferedImage bi = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_RGB); //TODO ugly
-        n.paintComponent(bi.getGraphics());
-        bi = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_RGB);
-        n.paintComponent(bi.getGraphics());
+            //select how many leaves are direct parts, the rest is split into circuits of the other type with 2+ leaves each
+            int direct;
+            do
+                direct = random.nextInt(Math.min(n, maxComp) + 1);
+            while (n - direct == 1 || (direct == 1 && n - direct < 2) || (direct == 0 && n - direct < 4));
+            int rest = n - direct;
+            int minGroups = rest == 0 ? 0 : Math.max(1, 2 - direct);
+            int groups = minGroups + random.nextInt(rest / 2 - minGroups + 1);
+            int[] sizes = new int[groups];
+            Arrays.fill(sizes, 2);
+            for (int i = 2 * groups; i < rest; i++)
+                sizes[random.nextInt(groups)]++;
 
-        File output = new File(filename + ".png");
-        try
-        {
-            ImageIO.write(bi, "png", output);
-        } catch (IOException e)
-        {
-            throw new RuntimeException(e);
+            for (int i = 0; i < direct; i++)
+                nt.add(leaves.get(range[0] + i));
+            int start = range[0] + direct;
+            for (int size : sizes)
+            {
+                Circuit part = nt instanceof Parallel ? new Serial(null) : new Parallel(null);
+                nt.add(part);
+                open.push(part);
+                ranges.push(new int[]{start, start + size});
+                start += size;
+            }
         }
+        return root;
     }
 
-    public static void saveValuesToFile(Network n, int voltage, boolean t0, String filename, boolean solution) {
+    private static Circuit getRandomCircuit(ArrayList<Circuit> circuits, int maxComp, SplittableRandom random) {
+        for (int i = 0; i < 8 && !circuits.isEmpty(); i++)
+        {
+            Circuit c = circuits.get(random.nextInt(circuits.size()));
+            if (c.getNumOfComponents() < maxComp)
+                return c;
+        }
+        return null;
+    }
 
-        double resistance = Math.round(n.getResistance(t0) * 1000) / 1000.0;
-        double current = Math.round(voltage / resistance * 1000) / 1000.0;
+    /**
+     * connects a capacitor in series or an inductor in parallel to one of nodes, which doesn't change any resistance
+     * at t0. Returns the new top level network
+     */
+    private static Network insertNeutral(Network root, Component part, ArrayList<Network> nodes, ArrayList<Circuit> circuits,
+                                         int maxComp, SplittableRandom random) {
+        Class<? extends Circuit> type = part instanceof Capacitor ? Serial.class : Parallel.class;
+        Network node = null;
+        for (int i = 0; i < 16 && node == null; i++)
+            node = getNeutralPosition(nodes.get(random.nextInt(nodes.size())), part, type, maxComp);
+        for (int i = 0; i < nodes.size() && node == null; i++) //no luck, look at all of them
+            node = getNeutralPosition(nodes.get(i), part, type, maxComp);
 
-        try
+        if (node == null) //every node is in a full circuit of the same type
         {
-            FileWriter writer = new FileWriter(filename + ".txt");
-            writer.write(n + "\n\n");
-            if (solution)
-                writer.write(resistance + " Ω  " + voltage + "V  " + current + "A\ncomponent: [Resistance, Voltage, Current]\n");
-            else
-                writer.write(voltage + "V\n");
-            HashMap<String, ArrayList<Double>> values = n.getValuesForParts(t0, voltage);
-            ArrayList<String> keys = new ArrayList<>(values.keySet());
-            Collections.sort(keys);
-            for (String key : keys)
+            //group part with a component of that circuit in a circuit of the other type, which stays within maxComp
+            Network sibling = getSibling(nodes, part, type);
+            if (sibling != null)
+                return wrap(root, sibling, part, type == Serial.class ? Parallel.class : Serial.class, nodes, circuits, random);
+            Circuit target = getRandomCircuit(circuits, maxComp, random);
+            if (target != null)
             {
-                ArrayList<Double> al = values.get(key);
-                for (int i = 0; i < al.size(); i++)
-                {
-                    double val = al.get(i);
-                    if (!Double.isInfinite(val) && val != 0.0 && !Double.isNaN(val))
-                        al.set(i, Math.round(val * 1000) / 1000.0);
-                }
-
-                if (solution)
-                    writer.write(key + ": " + values.get(key) + "\n");
-                else if (key.charAt(0) == 'R') //only resistors
-                    writer.write(key + ": " + values.get(key).get(0) + " Ω\n");
+                target.add(part);
+                return root;
             }
-            writer.close();
-        } catch (IOException e)
-        {
-            throw new RuntimeException(e);
+            node = circuits.get(random.nextInt(circuits.size()));
         }
-    }
-
-
-    abstract static class Network extends JPanel {
-        /**
-         * returns ArrayList for each Component with AL[0] = Resistance,  AL[1] = voltage, AL[2] = Current (before part)
-         *
-         * @param t0 if true evaluate network immediately after voltage is applied, else evaluate in settled state
-         */
-        public abstract HashMap<String, ArrayList<Double>> getValuesForParts(boolean t0, double voltage);
 
-        public abstract double getResistance(boolean t0);
+        Circuit parent = node.parentCircuit;
+        if (node.getClass() == type)
+            ((Circuit) node).add(part);
+        else if (parent != null && parent.getClass() == type)
+            parent.add(part);
+        else
+            return wrap(root, node, part, type, nodes, circuits, random);
+        return root;
+    }
 
-        public void paintComponent(Graphics g) {
-            int[] res = draw(g, 100, 50);
+    /**
+     * returns a component other than part in a circuit of the given type, one of the same class as part if there is
+     * one: Parallel(C1,C2) is a short at t0 like C1 alone, so a capacitor grouped with a capacitor (or an inductor
+     * with an inductor) doesn't change any resistance either. Null if there is no such component
+     */
+    private static Network getSibling(ArrayList<Network> nodes, Component part, Class<? extends Circuit> type) {
+        Network other = null;
+        for (Network node : nodes)
+        {
+            if (node == part || !node.isComponent() || node.parentCircuit == null || node.parentCircuit.getClass() != type)
+                continue;
+            if (node.getClass() == part.getClass())
+                return node;
+            if (other == null)
+                other = node;
+        }
+        return other;
+    }
 
-            g.drawLine(50, 50, 50, 100); //vertical1
-            g.drawLine(50, 50, 100 + cWidth / 2, 50); //horizontal1
-            g.drawLine(50, 100, 50, res[1] + lineLength); //vertical2
-            g.drawLine(50, res[1] + lineLength, 100 + cWidth / 2, res[1] + lineLength); //horizontal2
-            g.drawLine(100 + cWidth / 2, res[1], 100 + cWidth / 2, res[1] + lineLength); //vertical3
-            frameWidth = res[0] + 20;
-            frameHeight = res[1] + lineLength + 20;
-            //voltage source
-            g.drawOval(25, 100, 50, 50);
-            //arrow
-            g.drawLine(15, 100, 15, 150);
-            g.drawLine(10, 140, 15, 150);
-            g.drawLine(20, 140, 15, 150);
+    /**
+     * replaces node by a new circuit of the given type with node and part in random order, returns the new top level
+     * network
+     */
+    private static Network wrap(Network root, Network node, Component part, Class<? extends Circuit> type,
+                                ArrayList<Network> nodes, ArrayList<Circuit> circuits, SplittableRandom random) {
+        Circuit parent = node.parentCircuit;
+        Circuit nt = type == Serial.class ? new Serial(null) : new Parallel(null);
+        circuits.add(nt);
+        nodes.add(nt);
+        if (parent != null)
+            parent.replace(node, nt);
+        if (random.nextBoolean())
+        {
+            nt.add(node);
+            nt.add(part);
+        }
+        else
+        {
+            nt.add(part);
+            nt.add(node);
         }
+        return parent == null ? nt : root;
+    }
 
-        /**
-         * draws network and marks used space by returning the maximum x and y coordinates occupied
-         * by the image in int[0] and int[1], returns the x value for the bottom connection in int[2]
-         */
-        public abstract int[] draw(Graphics g, int x, int y);
+    /**
+     * returns node if part can be connected to it with a circuit of the given type, null otherwise
+     */
+    private static Network getNeutralPosition(Network node, Component part, Class<? extends Circuit> type, int maxComp) {
+        if (node == part)
+            return null;
+        Circuit parent = node.parentCircuit;
+        if (node.getClass() == type)
+            return ((Circuit) node).getNumOfComponents() < maxComp ? node : null;
+        if (parent == null || parent.getClass() != type || parent.getNumOfComponents() < maxComp)
+            return node;
+        return null;
+    }
 
-        public abstract int getMaxComponentsPerCircuit();
+    /**
+     * resolves nesting of nonComponents of the same Type, Parallel(Parallel(R1,R2),R2) -> Parallel(R1,R2,R3)
+     */
+    public static Network simplifyNetwork(Network network) {
+        ArrayList<Network> networks = network.getSubNetworks();
+        for (int i = networks.size() - 1; i >= 0; i--) //simplify lower levels first
+            if (!networks.get(i).isComponent())
+                ((Circuit) networks.get(i)).mergeParts();
+        return network;
+    }
 
-        public abstract boolean isComponent();
+    public static int getNumOfUselessResistors(Network network) {
+        return getNumOfUselessResistors(network.solve(true, 5));
+    }
+
+    /**
+     * counts the resistors without voltage in a t0 solution with a voltage other than 0
+     */
+    public static int getNumOfUselessResistors(Solution solution) {
+        int res = 0;
+        for (int i = 0; i < solution.components.length; i++)
+            if (solution.components[i] instanceof Resistor && solution.voltage[i] == 0.0) //resistor without voltage
+                res++;
+        return res;
+    }
+
+    /**
+     * saves an image of n as filename.png, the drawing classes are only loaded by the first call
+     */
+    public static void saveNetworkToFile(Network n, String filename) {
+        saveNetworkToFile(n, filename, settings.withImage("png"));
+    }
+
+    /**
+     * saves an image of n in format "png", "svg" (filename.svg) or "tikz" (filename.tex)
+     */
+    public static void saveNetworkToFile(Network n, String filename, String format) {
+        saveNetworkToFile(n, filename, settings.withImage(format));
+    }
+
+    /**
+     * saves an image of n with the format and sizes of s
+     */
+    public static void saveNetworkToFile(Network n, String filename, Settings s) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename + getImageExtension(s))))
+        {
+            writeImage(n, s, out);
+        } catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String getImageExtension(Settings s) {
+        return s.imageConf.equals("tikz") ? ".tex" : "." + s.imageConf;
+    }
+
+    /**
+     * writes an image of n in the format of s to out. Vector images are written while the network is drawn, without
+     * creating an image in memory
+     */
+    static void writeImage(Drawing n, Settings s, OutputStream out) throws IOException {
+        if (s.imageConf.equals("png"))
+        {
+            ImageRenderer.write(n, s, out);
+            return;
+        }
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        int[] size = n.getImageSize(s);
+        VectorCanvas canvas = s.imageConf.equals("svg") ? new SvgCanvas(writer) : new TikzCanvas(writer);
+        canvas.begin(size[0], size[1]);
+        n.paintMeasured(canvas, s);
+        canvas.end();
+        if (writer.checkError()) //also flushes
+            throw new IOException("can't write image");
+    }
+
+    public static void saveValuesToFile(Network n, int voltage, boolean t0, String filename, boolean solution) {
+        saveValuesToFile(n, n.solve(t0, voltage), voltage, t0, filename, solution);
+    }
+
+    /**
+     * saves values, which have to be solved from n with the given voltage at the given time
+     */
+    public static void saveValuesToFile(Network n, Solution values, int voltage, boolean t0, String filename, boolean solution) {
+        try (Writer writer = new BufferedWriter(new FileWriter(filename + ".txt")))
+        {
+            writeValues(writer, n, values, voltage, t0, solution);
+        } catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * writes the text of a task (resistor values) or a solution (all values) to writer, see saveValuesToFile
+     */
+    static void writeValues(Writer writer, Network n, Solution values, int voltage, boolean t0, boolean solution) throws IOException {
+        int[] order = SolutionWriter.TEXT.getOrder(values.components);
+        if (solution)
+            SolutionWriter.TEXT.writeSolution(writer, n, values, order, voltage, t0);
+        else
+            SolutionWriter.TEXT.writeTask(writer, n, values, order, voltage);
+    }
+
+    /**
+     * spreads the bits of x over the whole long (finalizer of SplitMix64)
+     */
+    static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * rounds to 3 decimal places, special values are kept
+     */
+    static double round(double val) {
+        if (!Double.isInfinite(val) && val != 0.0 && !Double.isNaN(val))
+            return Math.round(val * 1000) / 1000.0;
+        return val;
+    }
+
+
+    abstract static class Network implements Drawing {
+        Circuit parentCircuit; //circuit this network is part of, null for the top level
+        //position and size of the drawing, set by draw
+        int layoutX;
+        int layoutY;
+        int layoutWidth;
+        int layoutHeight;
+        long canonicalHash; //set by getCanonicalHash
+
+        /**
+         * returns ArrayList for each Component with AL[0] = Resistance,  AL[1] = voltage, AL[2] = Current (before part)
+         *
+         * @param t0 if true evaluate network immediately after voltage is applied, else evaluate in settled state
+         */
+        public HashMap<String, ArrayList<Double>> getValuesForParts(boolean t0, double voltage) {
+            return solve(t0, voltage).toMap();
+        }
+
+        /**
+         * evaluates the network into a new Solution, see getValuesForParts
+         */
+        public Solution solve(boolean t0, double voltage) {
+            Solution solution = new Solution(this);
+            solve(t0, voltage, solution);
+            return solution;
+        }
+
+        /**
+         * evaluates the network at t0 and in settled state in a single traversal, returns {t0 Solution, tInf Solution}
+         */
+        public Solution[] solveBoth(double voltage) {
+            Solution t0 = new Solution(this);
+            Solution tInf = new Solution(t0.components);
+            solveBoth(voltage, t0, voltage, tInf);
+            return new Solution[]{t0, tInf};
+        }
+
+        /**
+         * writes the values of all components of this network into the arrays of solution in a single traversal
+         */
+        void solve(boolean t0, double voltage, Solution solution) {
+            if (isLarge())
+                solveParallel(t0, voltage, solution, 0, null);
+            else
+                solve(t0, voltage, solution, solution.stack);
+        }
+
+        private void solve(boolean t0, double voltage, Solution solution, SolveStack stack) {
+            stack.push(this, voltage, 0);
+            while (stack.size > 0)
+            {
+                Network network = stack.pop();
+                network.solvePart(t0, stack.voltages[stack.size], solution, stack);
+            }
+        }
+
+        /**
+         * like solve, but fills the solutions for both evaluation times in the same traversal
+         */
+        void solveBoth(double voltageT0, Solution t0, double voltageTInf, Solution tInf) {
+            if (isLarge())
+                solveParallel(true, voltageT0, t0, voltageTInf, tInf);
+            else
+                solveBoth(voltageT0, t0, voltageTInf, tInf, t0.stack);
+        }
+
+        private void solveBoth(double voltageT0, Solution t0, double voltageTInf, Solution tInf, SolveStack stack) {
+            stack.push(this, voltageT0, voltageTInf);
+            while (stack.size > 0)
+            {
+                Network network = stack.pop();
+                network.solveBothPart(stack.voltages[stack.size], t0, stack.voltagesTInf[stack.size], tInf, stack);
+            }
+        }
+
+        /**
+         * solves the large circuits of this network (see isLarge) here and the networks below them in groups of about
+         * parallelThreshold networks on the fork/join pool. Every component has its own index in the solutions, so the
+         * groups never write the same values. Solves both times if tInf isn't null, else only t0 at the time of evalT0
+         */
+        private void solveParallel(boolean evalT0, double voltage, Solution solution, double voltageTInf, Solution tInf) {
+            SolveStack stack = new SolveStack();
+            ArrayList<SolveStack> groups = new ArrayList<>();
+            SolveStack group = new SolveStack();
+            int groupSize = 0;
+            stack.push(this, voltage, voltageTInf);
+            while (stack.size > 0)
+            {
+                Network network = stack.pop();
+                double v = stack.voltages[stack.size];
+                double vTInf = stack.voltagesTInf[stack.size];
+                if (network.isLarge())
+                {
+                    if (tInf == null)
+                        network.solvePart(evalT0, v, solution, stack);
+                    else
+                        network.solveBothPart(v, solution, vTInf, tInf, stack);
+                }
+                else
+                {
+                    group.push(network, v, vTInf);
+                    groupSize += network.getSize();
+                    if (groupSize >= parallelThreshold)
+                    {
+                        groups.add(group);
+                        group = new SolveStack();
+                        groupSize = 0;
+                    }
+                }
+            }
+            if (group.size > 0)
+                groups.add(group);
+
+            forEachParallel(groups, g -> {
+                SolveStack own = new SolveStack();
+                for (int i = 0; i < g.size; i++)
+                    if (tInf == null)
+                        g.networks[i].solve(evalT0, g.voltages[i], solution, own);
+                    else
+                        g.networks[i].solveBoth(g.voltages[i], solution, g.voltagesTInf[i], tInf, own);
+            });
+        }
+
+        /**
+         * solves only this network, parts are pushed to stack with their voltage
+         */
+        abstract void solvePart(boolean t0, double voltage, Solution solution, SolveStack stack);
+
+        abstract void solveBothPart(double voltageT0, Solution t0, double voltageTInf, Solution tInf, SolveStack stack);
+
+        /**
+         * adds all components of this network to list in drawing order
+         */
+        void collectComponents(ArrayList<Component> list) {
+            for (Network network : getSubNetworks())
+                if (network.isComponent())
+                    list.add((Component) network);
+        }
+
+        /**
+         * returns this network and all networks in it, every circuit before its parts and parts in drawing order.
+         * Iterating backwards visits every part before its circuit. Works without recursion, so the depth of a
+         * network is not limited by the stack size
+         */
+        ArrayList<Network> getSubNetworks() {
+            ArrayList<Network> res = new ArrayList<>();
+            ArrayDeque<Network> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty())
+            {
+                Network network = stack.pop();
+                res.add(network);
+                if (!network.isComponent())
+                {
+                    ArrayList<Network> parts = ((Circuit) network).parts;
+                    for (int i = parts.size() - 1; i >= 0; i--) stack.push(parts.get(i));
+                }
+            }
+            return res;
+        }
+
+        /**
+         * returns the number of networks in this network, including itself
+         */
+        int getSize() {
+            return 1;
+        }
+
+        /**
+         * true if this is a circuit with at least parallelThreshold networks, its parts are then handled in parallel
+         */
+        boolean isLarge() {
+            return parallelThreshold > 0 && !isComponent() && getSize() >= parallelThreshold;
+        }
+
+        /**
+         * splits a large network into the large circuits in it and the other networks below them, which don't contain
+         * each other. The large circuits are added to large, every circuit before its parts. The other networks are
+         * returned in groups of about parallelThreshold networks, every group are parts of the same circuit in drawing
+         * order. Networks for which needed is false are left out with everything in them
+         */
+        ArrayList<ArrayList<Network>> splitLarge(ArrayList<Circuit> large, Predicate<Network> needed) {
+            ArrayList<ArrayList<Network>> groups = new ArrayList<>();
+            ArrayDeque<Circuit> stack = new ArrayDeque<>();
+            stack.push((Circuit) this);
+            while (!stack.isEmpty())
+            {
+                Circuit circuit = stack.pop();
+                large.add(circuit);
+                ArrayList<Network> group = new ArrayList<>();
+                int groupSize = 0;
+                for (Network part : circuit.parts)
+                {
+                    if (!needed.test(part))
+                        continue;
+                    if (part.isLarge())
+                        stack.push((Circuit) part);
+                    else
+                    {
+                        group.add(part);
+                        groupSize += part.getSize();
+                        if (groupSize >= parallelThreshold)
+                        {
+                            groups.add(group);
+                            group = new ArrayList<>();
+                            groupSize = 0;
+                        }
+                    }
+                }
+                if (!group.isEmpty())
+                    groups.add(group);
+            }
+            return groups;
+        }
+
+        public abstract double getResistance(boolean t0);
+
+        /**
+         * draws network with voltage source and returns the size of the image as {width, height}
+         */
+        public int[] paint(Canvas g, Settings s) {
+            measure(s);
+            return paintMeasured(g, s);
+        }
+
+        /**
+         * measures the network and returns the size of the image paint would draw as {width, height}
+         */
+        public int[] getImageSize(Settings s) {
+            measure(s);
+            return new int[]{100 + layoutWidth + 20, 50 + layoutHeight + s.lineLength + 20};
+        }
+
+        /**
+         * like paint, but uses the sizes of the last measure
+         */
+        public int[] paintMeasured(Canvas g, Settings s) {
+            return drawSource(g, drawMeasured(g, 100, 50, s), s);
+        }
+
+        /**
+         * like paintMeasured, but of a large network only the large circuits are drawn. The networks below them are
+         * placed and returned in the groups of splitLarge, they can be drawn at the same time with drawMeasured at
+         * their layoutX, layoutY
+         */
+        ArrayList<ArrayList<Network>> paintLarge(Canvas g, Settings s) {
+            layoutX = 100;
+            layoutY = 50;
+            ArrayList<Circuit> large = new ArrayList<>();
+            ArrayList<ArrayList<Network>> groups = splitLarge(large, part -> true);
+            for (Circuit circuit : large)
+            {
+                circuit.placeParts(s);
+                circuit.drawPart(g, s);
+            }
+            drawSource(g, new int[]{100 + layoutWidth, 50 + layoutHeight}, s);
+            return groups;
+        }
+
+        /**
+         * places all networks like paintMeasured does, of a large network the networks below the large circuits are
+         * placed at the same time
+         */
+        public void placeAll(Settings s) {
+            layoutX = 100;
+            layoutY = 50;
+            if (isLarge())
+            {
+                ArrayList<Circuit> large = new ArrayList<>();
+                ArrayList<ArrayList<Network>> groups = splitLarge(large, part -> true);
+                for (Circuit circuit : large) circuit.placeParts(s);
+                forEachParallel(groups, group -> {
+                    for (Network network : group) network.placeSubNetworks(s);
+                });
+                return;
+            }
+            placeSubNetworks(s);
+        }
+
+        private void placeSubNetworks(Settings s) {
+            for (Network network : getSubNetworks())
+                if (!network.isComponent())
+                    ((Circuit) network).placeParts(s);
+        }
+
+        /**
+         * like paintMeasured, but only draws the networks that reach into the area, everything a network draws is
+         * inside its layout except text, which may reach margin further. Only reads the layout of placeAll
+         */
+        public void paintArea(Canvas g, int left, int top, int right, int bottom, int margin, Settings s) {
+            ArrayDeque<Network> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty())
+            {
+                Network network = stack.pop();
+                if (!network.isComponent())
+                {
+                    for (Network part : ((Circuit) network).parts)
+                    {
+                        if (part.layoutY - margin > bottom)
+                            break; //parts are never placed above the previous part
+                        if (part.layoutY + part.layoutHeight + margin >= top && part.layoutX - margin <= right
+                                && part.layoutX + part.layoutWidth + margin >= left)
+                            stack.push(part);
+                    }
+                }
+                network.drawPart(g, s);
+            }
+            drawSource(g, new int[]{100 + layoutWidth, 50 + layoutHeight}, s);
+        }
+
+        /**
+         * draws the voltage source and its connections to the network, res is the result of drawMeasured
+         */
+        private int[] drawSource(Canvas g, int[] res, Settings s) {
+            g.drawLine(50, 50, 50, 100); //vertical1
+            g.drawLine(50, 50, 100 + s.cWidth / 2, 50); //horizontal1
+            g.drawLine(50, 100, 50, res[1] + s.lineLength); //vertical2
+            g.drawLine(50, res[1] + s.lineLength, 100 + s.cWidth / 2, res[1] + s.lineLength); //horizontal2
+            g.drawLine(100 + s.cWidth / 2, res[1], 100 + s.cWidth / 2, res[1] + s.lineLength); //vertical3
+            //voltage source
+            g.drawOval(25, 100, 50, 50);
+            //arrow
+            g.drawLine(15, 100, 15, 150);
+            g.drawLine(10, 140, 15, 150);
+            g.drawLine(20, 140, 15, 150);
+            return new int[]{res[0] + 20, res[1] + s.lineLength + 20};
+        }
+
+        /**
+         * draws network and marks used space by returning the maximum x and y coordinates occupied
+         * by the image in int[0] and int[1], returns the x value for the bottom connection in int[2]
+         */
+        public int[] draw(Canvas g, int x, int y, Settings s) {
+            measure(s);
+            return drawMeasured(g, x, y, s);
+        }
+
+        /**
+         * like draw, but uses the sizes of the last measure
+         */
+        int[] drawMeasured(Canvas g, int x, int y, Settings s) {
+            layoutX = x;
+            layoutY = y;
+            //circuits hand their position down to their parts, then every network draws only its own lines
+            ArrayDeque<Network> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty())
+            {
+                Network network = stack.pop();
+                if (!network.isComponent())
+                {
+                    Circuit circuit = (Circuit) network;
+                    circuit.placeParts(s);
+                    for (Network part : circuit.parts) stack.push(part);
+                }
+                network.drawPart(g, s);
+            }
+            return new int[]{x + layoutWidth, y + layoutHeight, x + getConnectionOffset(s)};
+        }
+
+        /**
+         * calculates layoutWidth and layoutHeight of this network and all networks in it
+         */
+        void measure(Settings s) {
+            if (isLarge())
+            {
+                ArrayList<Circuit> large = new ArrayList<>();
+                forEachParallel(splitLarge(large, part -> true), group -> {
+                    for (Network network : group) network.measure(s);
+                });
+                for (int i = large.size() - 1; i >= 0; i--) large.get(i).measurePart(s);
+                return;
+            }
+            ArrayList<Network> networks = getSubNetworks();
+            for (int i = networks.size() - 1; i >= 0; i--) networks.get(i).measurePart(s);
+        }
+
+        /**
+         * calculates layoutWidth and layoutHeight from the sizes of the parts
+         */
+        abstract void measurePart(Settings s);
+
+        /**
+         * draws only this network at layoutX, layoutY. Parts are already placed, but draw themselves
+         */
+        abstract void drawPart(Canvas g, Settings s);
+
+        /**
+         * returns the distance between layoutX and the x value of the bottom connection
+         */
+        abstract int getConnectionOffset(Settings s);
+
+        public int getMaxComponentsPerCircuit() {
+            if (isComponent())
+                return 1;
+            int max = 0;
+            for (Network network : getSubNetworks())
+                if (!network.isComponent())
+                    max = Math.max(max, ((Circuit) network).getNumOfComponents());
+            return max;
+        }
+
+        public abstract boolean isComponent();
+
+        /**
+         * returns a hash of the circuit that doesn't depend on the order of the parts of a circuit or on the names of
+         * the components, so networks like Parallel(R,Serial(C,R)) and Parallel(Serial(R,C),R) get the same hash.
+         * With values the resistances are part of the hash. The network has to be simplified
+         */
+        public long getCanonicalHash(boolean values) {
+            ArrayList<Network> networks = getSubNetworks();
+            for (int i = networks.size() - 1; i >= 0; i--) networks.get(i).updateCanonicalHash(values);
+            return canonicalHash;
+        }
+
+        /**
+         * calculates canonicalHash from the hashes of the parts
+         */
+        abstract void updateCanonicalHash(boolean values);
     }
 
     abstract static class Circuit extends Network {
         ArrayList<Network> parts;
+        private int componentCount; //number of parts that are components
+        //cached equivalent resistances, a circuit is only valid if all of its parts are
+        private double resistanceT0;
+        private double resistanceTInf;
+        private boolean validT0;
+        private boolean validTInf;
+        private int size; //cached getSize, only used if validSize
+        private boolean validSize;
+
+        Circuit(ArrayList<Network> parts) {
+            if (parts == null)
+                this.parts = new ArrayList<>();
+            else
+            {
+                this.parts = parts;
+                for (Network part : parts) part.parentCircuit = this;
+                updateComponentCount();
+            }
+        }
+
+        public ArrayList<Network> getContent() {
+            return parts;
+        }
+
+        public void add(Network network) {
+            parts.add(network);
+            network.parentCircuit = this;
+            if (network.isComponent())
+                componentCount++;
+            invalidate();
+        }
+
+        public void addAll(ArrayList<Network> networks) {
+            parts.addAll(networks);
+            for (Network network : networks) network.parentCircuit = this;
+            updateComponentCount();
+            invalidate();
+        }
+
+        /**
+         * puts replacement at the position of network
+         */
+        public void replace(Network network, Network replacement) {
+            parts.set(parts.indexOf(network), replacement);
+            network.parentCircuit = null;
+            replacement.parentCircuit = this;
+            updateComponentCount();
+            invalidate();
+        }
+
+        public void removeAll(Collection<Network> networks) {
+            parts.removeAll(networks);
+            for (Network network : networks)
+                if (network.parentCircuit == this)
+                    network.parentCircuit = null;
+            updateComponentCount();
+            invalidate();
+        }
+
+        /**
+         * replaces parts of the same type by their content, Parallel(Parallel(R1,R2),R3) -> Parallel(R3,R1,R2).
+         * Builds the new list of parts in one pass instead of removing the nested circuits one by one
+         */
+        void mergeParts() {
+            ArrayList<Network> merged = new ArrayList<>();
+            for (Network part : parts)
+                if (part.getClass() == getClass())
+                    merged.addAll(((Circuit) part).parts);
+            if (merged.isEmpty())
+                return;
+
+            ArrayList<Network> res = new ArrayList<>(parts.size() + merged.size());
+            for (Network part : parts)
+                if (part.getClass() != getClass())
+                    res.add(part);
+            res.addAll(merged);
+            for (Network part : merged) part.parentCircuit = this;
+            parts = res;
+            updateComponentCount();
+            invalidate();
+        }
+
+        private void updateComponentCount() {
+            componentCount = 0;
+            for (Network part : parts)
+                if (part.isComponent())
+                    componentCount++;
+        }
+
+        /**
+         * drops the cached resistance of this circuit and all circuits containing it
+         */
+        public void invalidate() {
+            //a valid circuit never contains an invalid one, so we can stop at the first invalid circuit
+            for (Circuit c = this; c != null && (c.validT0 || c.validTInf || c.validSize); c = c.parentCircuit)
+            {
+                c.validT0 = false;
+                c.validTInf = false;
+                c.validSize = false;
+            }
+        }
+
+        int getSize() {
+            if (!validSize)
+            {
+                //like updateResistances, sizes of parts before their circuit
+                ArrayList<Circuit> invalid = new ArrayList<>();
+                ArrayDeque<Circuit> stack = new ArrayDeque<>();
+                stack.push(this);
+                while (!stack.isEmpty())
+                {
+                    Circuit c = stack.pop();
+                    invalid.add(c);
+                    for (Network part : c.parts)
+                        if (!part.isComponent() && !((Circuit) part).validSize)
+                            stack.push((Circuit) part);
+                }
+                for (int i = invalid.size() - 1; i >= 0; i--)
+                {
+                    Circuit c = invalid.get(i);
+                    c.size = 1;
+                    for (Network part : c.parts) c.size += part.getSize();
+                    c.validSize = true;
+                }
+            }
+            return size;
+        }
+
+        public double getResistance(boolean t0) {
+            if (t0 ? !validT0 : !validTInf)
+            {
+                if (isLarge())
+                    updateResistancesParallel(t0);
+                else
+                    updateResistances(t0);
+            }
+            return t0 ? resistanceT0 : resistanceTInf;
+        }
+
+        private boolean isValid(boolean t0) {
+            return t0 ? validT0 : validTInf;
+        }
+
+        /**
+         * like updateResistances, but the invalid networks below the large circuits are calculated in parallel
+         */
+        private void updateResistancesParallel(boolean t0) {
+            ArrayList<Circuit> large = new ArrayList<>();
+            ArrayList<ArrayList<Network>> groups = splitLarge(large, part -> !part.isComponent() && !((Circuit) part).isValid(t0));
+            forEachParallel(groups, group -> {
+                for (Network network : group) network.getResistance(t0);
+            });
+            for (int i = large.size() - 1; i >= 0; i--) large.get(i).updateResistance(t0);
+        }
+
+        /**
+         * calculates the resistance of this circuit and all invalid circuits in it. Parts are calculated before their
+         * circuit, so calculateResistance never has to recurse
+         */
+        private void updateResistances(boolean t0) {
+            ArrayList<Circuit> invalid = new ArrayList<>();
+            ArrayDeque<Circuit> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty())
+            {
+                Circuit c = stack.pop();
+                invalid.add(c);
+                for (Network part : c.parts)
+                    if (!part.isComponent() && (t0 ? !((Circuit) part).validT0 : !((Circuit) part).validTInf))
+                        stack.push((Circuit) part);
+            }
+            for (int i = invalid.size() - 1; i >= 0; i--) invalid.get(i).updateResistance(t0);
+        }
+
+        /**
+         * calculates the resistance of only this circuit, the parts have to be valid
+         */
+        private void updateResistance(boolean t0) {
+            if (t0)
+            {
+                resistanceT0 = calculateResistance(true);
+                validT0 = true;
+            }
+            else
+            {
+                resistanceTInf = calculateResistance(false);
+                validTInf = true;
+            }
+        }
+
+        /**
+         * calculates the equivalent resistance from the resistances of the parts
+         */
+        abstract double calculateResistance(boolean t0);
+
+        /**
+         * sets the position of all parts from the own position, sizes have to be measured
+         */
+        abstract void placeParts(Settings s);
+
+        void updateCanonicalHash(boolean values) {
+            //sorted, so the order of the parts doesn't matter
+            long[] hashes = new long[parts.size()];
+            for (int i = 0; i < hashes.length; i++) hashes[i] = parts.get(i).canonicalHash;
+            Arrays.sort(hashes);
+            long hash = this instanceof Parallel ? 0x9E3779B97F4A7C15L : 0xC2B2AE3D27D4EB4FL;
+            for (long h : hashes) hash = mix(hash * 31 + h);
+            canonicalHash = hash;
+        }
+
+        /**
+         * returns the number of parts that are components
+         */
+        public int getNumOfComponents() {
+            return componentCount;
+        }
+
+        public boolean isComponent() {
+            return false;
+        }
+
+        public String toString() {
+            StringBuilder res = new StringBuilder();
+            ArrayDeque<Object> stack = new ArrayDeque<>(); //networks and the separators between them
+            stack.push(this);
+            while (!stack.isEmpty())
+            {
+                Object next = stack.pop();
+                if (next instanceof Circuit)
+                {
+                    Circuit circuit = (Circuit) next;
+                    res.append(circuit.getClass().getSimpleName()).append('(');
+                    stack.push(")");
+                    for (int i = circuit.parts.size() - 1; i >= 0; i--)
+                    {
+                        stack.push(circuit.parts.get(i));
+                        if (i > 0)
+                            stack.push(",");
+                    }
+                }
+                else
+                    res.append(next);
+            }
+            return res.toString();
+        }
+    }
+
+    static class Serial extends Circuit {
+        public Serial(ArrayList<Network> parts) {
+            super(parts);
+        }
+
+        void solvePart(boolean t0, double voltage, Solution solution, SolveStack stack) {
+            int inf = countInfiniteParts(t0);
+            double resistance = getResistance(t0);
+            for (Network part : parts)
+                stack.push(part, getPartVoltage(part, t0, voltage, resistance, inf), 0);
+        }
+
+        void solveBothPart(double voltageT0, Solution t0, double voltageTInf, Solution tInf, SolveStack stack) {
+            int infT0 = countInfiniteParts(true);
+            int infTInf = countInfiniteParts(false);
+            double resistanceT0 = getResistance(true);
+            double resistanceTInf = getResistance(false);
+            for (Network part : parts)
+                stack.push(part, getPartVoltage(part, true, voltageT0, resistanceT0, infT0),
+                        getPartVoltage(part, false, voltageTInf, resistanceTInf, infTInf));
+        }
+
+        /**
+         * count how many parts have infinite resistance. If 2 or more do, none of them have voltage
+         */
+        private int countInfiniteParts(boolean t0) {
+            int inf = 0;
+            for (Network part : parts)
+                if (Double.isInfinite(part.getResistance(t0)))
+                    inf++;
+            return inf;
+        }
+
+        private static double getPartVoltage(Network part, boolean t0, double voltage, double resistance, int inf) {
+            double partRes = part.getResistance(t0);
+            if (Double.isInfinite(partRes) && inf > 1)
+                return 0.0;
+            else if (Double.isInfinite(partRes) && Double.isInfinite(resistance)) //single inf part gets all voltage
+                return voltage;
+            return (voltage * partRes) / resistance;
+        }
+
+        double calculateResistance(boolean t0) {
+            double res = 0;
+            for (Network part : parts) res += part.getResistance(t0);
+            return res;
+        }
+
+        void measurePart(Settings s) {
+            //parts are drawn below each other
+            layoutWidth = 0;
+            layoutHeight = 0;
+            for (Network part : parts)
+            {
+                layoutWidth = Math.max(layoutWidth, part.layoutWidth);
+                layoutHeight += part.layoutHeight;
+            }
+        }
+
+        void placeParts(Settings s) {
+            int y = layoutY;
+            for (Network part : parts)
+            {
+                part.layoutX = layoutX;
+                part.layoutY = y;
+                y += part.layoutHeight;
+            }
+        }
+
+        void drawPart(Canvas g, Settings s) {
+            //the parts connect to each other
+        }
+
+        int getConnectionOffset(Settings s) {
+            return s.cWidth / 2;
+        }
+    }
+
+    static class Parallel extends Circuit {
+
+        public Parallel(ArrayList<Network> parts) {
+            super(parts);
+        }
+
+        void solvePart(boolean t0, double voltage, Solution solution, SolveStack stack) {
+            if (getResistance(t0) == 0.0) //check if shorted
+                voltage = 0.0;
+            for (Network part : parts) stack.push(part, voltage, 0);
+        }
+
+        void solveBothPart(double voltageT0, Solution t0, double voltageTInf, Solution tInf, SolveStack stack) {
+            if (getResistance(true) == 0.0) //check if shorted
+                voltageT0 = 0.0;
+            if (getResistance(false) == 0.0)
+                voltageTInf = 0.0;
+            for (Network part : parts) stack.push(part, voltageT0, voltageTInf);
+        }
+
+        double calculateResistance(boolean t0) {
+            double res = Double.POSITIVE_INFINITY; //parts with infinite resistance are ignored
+            for (Network part : parts)
+            {
+                double resistance = part.getResistance(t0);
+                if (resistance == 0.0) //shorted
+                    return 0.0;
+                if (Double.isInfinite(resistance))
+                    continue;
+                res = Double.isInfinite(res) ? resistance : (res * resistance) / (res + resistance);
+            }
+            return res;
+        }
+
+        void measurePart(Settings s) {
+            //parts are drawn next to each other with 30 space, with a connection line above and below
+            layoutWidth = 30 * (parts.size() - 1);
+            int maxHeight = 0;
+            for (Network part : parts)
+            {
+                layoutWidth += part.layoutWidth;
+                maxHeight = Math.max(maxHeight, part.layoutHeight);
+            }
+            layoutHeight = s.lineLength + maxHeight + s.lineLength;
+        }
+
+        void placeParts(Settings s) {
+            int x = layoutX;
+            for (Network part : parts)
+            {
+                part.layoutX = x;
+                part.layoutY = layoutY + s.lineLength;
+                x += part.layoutWidth + 30; //30 space
+            }
+        }
+
+        void drawPart(Canvas g, Settings s) {
+            int startX = layoutX + s.cWidth / 2;
+            int y = layoutY + s.lineLength;
+            int maxY = layoutY + layoutHeight;
+            int lastX = startX; //x of the bottom connection of the last part
+
+            g.drawLine(startX, layoutY, startX, y); //vertical connection  for whole parallel
+            for (Network part : parts) //draw bottom connections
+            {
+                lastX = part.layoutX + part.getConnectionOffset(s);
+                g.drawLine(lastX, part.layoutY + part.layoutHeight, lastX, maxY);
+            }
+            g.drawLine(startX, y, lastX, y);//horizontal top connection
+            g.drawLine(startX, maxY, lastX, maxY);//horizontal bottom connection
+        }
+
+        int getConnectionOffset(Settings s) {
+            return s.cWidth / 2 + s.cWidth / 2;
+        }
+    }
+
+
+    abstract static class Component extends Network {
+        String name;
+        int id; //index in the arrays of the latest Solution created for a network containing this component
+
+        void solvePart(boolean t0, double voltage, Solution solution, SolveStack stack) {
+            double R = getResistance(t0);
+            solution.resistance[id] = R;
+            if (R == 0.0)
+            {
+                solution.voltage[id] = 0.0;
+                solution.current[id] = Double.POSITIVE_INFINITY;
+            }
+            else if (Double.isInfinite(R))
+            {
+                solution.voltage[id] = voltage;
+                solution.current[id] = 0.0;
+            }
+            else
+            {
+                solution.voltage[id] = voltage;
+                solution.current[id] = voltage / R;
+            }
+        }
+
+        void solveBothPart(double voltageT0, Solution t0, double voltageTInf, Solution tInf, SolveStack stack) {
+            solvePart(true, voltageT0, t0, stack);
+            solvePart(false, voltageTInf, tInf, stack);
+        }
+
+        void measurePart(Settings s) {
+            layoutWidth = s.cWidth;
+            layoutHeight = s.lineLength + s.cHeight;
+        }
+
+        void drawPart(Canvas g, Settings s) {
+            //g.drawLine(x, y, x + s.cWidth, y + s.cHeight);
+            g.drawLine(layoutX + s.cWidth / 2, layoutY, layoutX + s.cWidth / 2, layoutY + s.lineLength);
+            g.drawRect(layoutX, layoutY + s.lineLength, s.cWidth, s.cHeight); //50 100
+            g.drawString(name, layoutX + s.cWidth / 4, layoutY + s.lineLength + s.cHeight / 2);
+        }
+
+        int getConnectionOffset(Settings s) {
+            return s.cWidth / 2;
+        }
+
+        public boolean isComponent() {
+            return true;
+        }
+
+        void updateCanonicalHash(boolean values) {
+            long value = values && this instanceof Resistor ? Double.doubleToLongBits(getResistance(true)) : 0;
+            canonicalHash = mix(toString().charAt(0) * 0x100000001B3L + value);
+        }
+    }
+
+    static class Resistor extends Component {
+        double R; //in Ohm
+
+        public Resistor(String name, double R) {
+            this.name = name;
+            this.R = R;
+        }
+
+        /**
+         * changes the resistance, only the circuits containing this resistor have to calculate their resistance again
+         */
+        public void setResistance(double R) {
+            if (this.R == R)
+                return;
+            this.R = R;
+            if (parentCircuit != null)
+                parentCircuit.invalidate();
+        }
+
+        public double getResistance(boolean t0) {
+            return R;
+        }
+
+        public String toString() {
+            return "R";
+        }
+    }
+
+    static class Capacitor extends Component {
+        double C; //in F
+
+        public Capacitor(String name, double C) {
+            this.name = name;
+            this.C = C;
+        }
+
+        public double getResistance(boolean t0) {
+            return t0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+
+        public String toString() {
+            return "C";
+        }
+    }
+
+    static class Inductor extends Component {
+        double L;
+
+        public Inductor(String name, double L) {
+            this.name = name;
+            this.L = L;
+        }
+
+        public double getResistance(boolean t0) {
+            return t0 ? Double.POSITIVE_INFINITY : 0;
+        }
+
+        public String toString() {
+            return "L";
+        }
+    }
+
+    /**
+     * the network, evaluation and visual parameters of an exercise. Settings never change, so exercises with different
+     * settings can be created at the same time. maxCompGiven is false while maxComponentsPerCircuit is the default,
+     * which follows the number of components
+     */
+    record Settings(int resistors, int capacitors, int inductors, int minPartValue, int maxPartValue, int minVoltage,
+                    int maxVoltage, int maxComponentsPerCircuit, int maxUselessResistors, String tConf, String imageConf,
+                    int cWidth, int cHeight, int lineLength, boolean maxCompGiven) {
+        static final String OPTIONS = """
+                -nRes: number of resistors
+                -nCap: number of capacitors
+                -nInd: number of inductors
+                -minPart: minimum resistance value
+                -maxPart: maximum resistance value
+                -minV: minimum voltage
+                -maxV: maximum voltage
+                -maxComp: maximum components per circuit, at least 2
+                -maxUseless: maximum shorted resistors
+                -cWidth: width of component
+                -cHeight: height of component
+                -lines: length of vertical connections
+                -time: "t0"=evaluate at t0, "tInf": evaluate at settled state, default=do both
+                -image: "png"=save an image of the network, "svg" or "tikz": save a vector image, "none": only save the text files, default=png
+                """;
+
+        Settings(int resistors, int capacitors, int inductors, int minPartValue, int maxPartValue, int minVoltage,
+                 int maxVoltage, int maxComponentsPerCircuit, int maxUselessResistors, String tConf, String imageConf,
+                 int cWidth, int cHeight, int lineLength) {
+            this(resistors, capacitors, inductors, minPartValue, maxPartValue, minVoltage, maxVoltage,
+                    maxComponentsPerCircuit, maxUselessResistors, tConf, imageConf, cWidth, cHeight, lineLength, true);
+        }
+
+        /**
+         * reads the options of map that belong to an exercise and removes them, missing options are taken from
+         * defaults. Throws an exception if an option is invalid
+         */
+        static Settings read(HashMap<String, String> map, Settings defaults) {
+            int resistors = readInt(map, "-nRes", defaults.resistors);
+            int capacitors = readInt(map, "-nCap", defaults.capacitors);
+            int inductors = readInt(map, "-nInd", defaults.inductors);
+            //the default -maxComp depends on the number of components, so it follows them unless it was given
+            boolean maxCompGiven = defaults.maxCompGiven || map.containsKey("-maxComp");
+            int maxComp = maxCompGiven ? defaults.maxComponentsPerCircuit : getDefaultMaxComp(resistors + capacitors + inductors);
+            Settings s = new Settings(
+                    resistors,
+                    capacitors,
+                    inductors,
+                    readInt(map, "-minPart", defaults.minPartValue),
+                    readInt(map, "-maxPart", defaults.maxPartValue),
+                    readInt(map, "-minV", defaults.minVoltage),
+                    readInt(map, "-maxV", defaults.maxVoltage),
+                    readInt(map, "-maxComp", maxComp),
+                    readInt(map, "-maxUseless", defaults.maxUselessResistors),
+                    map.containsKey("-time") ? map.remove("-time") : defaults.tConf,
+                    map.containsKey("-image") ? map.remove("-image") : defaults.imageConf,
+                    readInt(map, "-cWidth", defaults.cWidth),
+                    readInt(map, "-cHeight", defaults.cHeight),
+                    readInt(map, "-lines", defaults.lineLength),
+                    maxCompGiven);
+            if (!(s.tConf.equals("t0") || s.tConf.equals("tInf") || s.tConf.equals("both"))
+                    || !Arrays.asList("png", "svg", "tikz", "none").contains(s.imageConf)
+                    || s.maxComponentsPerCircuit < 2 || s.resistors + s.capacitors + s.inductors < 1)
+                throw new IllegalArgumentException();
+            return s;
+        }
+
+        static int getDefaultMaxComp(int components) {
+            return Math.max(2, components / 3);
+        }
+
+        private static int readInt(HashMap<String, String> map, String key, int value) {
+            return map.containsKey(key) ? Integer.parseInt(map.remove(key)) : value;
+        }
+
+        Settings withComponents(int resistors, int capacitors, int inductors) {
+            return new Settings(resistors, capacitors, inductors, minPartValue, maxPartValue, minVoltage, maxVoltage,
+                    maxComponentsPerCircuit, maxUselessResistors, tConf, imageConf, cWidth, cHeight, lineLength,
+                    maxCompGiven);
+        }
+
+        /**
+         * returns these settings with only the values that change the generated network, exercises created with the
+         * same key can be used for each other
+         */
+        Settings getGenerationKey() {
+            return new Settings(resistors, capacitors, inductors, minPartValue, maxPartValue, minVoltage, maxVoltage,
+                    maxComponentsPerCircuit, maxUselessResistors, "both", "none", 0, 0, 0, true);
+        }
+
+        Settings withImage(String imageConf) {
+            return new Settings(resistors, capacitors, inductors, minPartValue, maxPartValue, minVoltage, maxVoltage,
+                    maxComponentsPerCircuit, maxUselessResistors, tConf, imageConf, cWidth, cHeight, lineLength,
+                    maxCompGiven);
+        }
+    }
+
+    /**
+     * a checked parameter set ready for generation. Plan.of generates networks until PILOT_ACCEPTED meet -maxComp and
+     * -maxUseless, at most PILOT_ATTEMPTS, so conditions no generated network meets fail before the first exercise
+     * instead of never finishing, and exercises that take far more attempts than expected are stopped after
+     * maxAttempts
+     */
+    record Plan(String name, Settings settings, double expectedAttempts, int maxAttempts) {
+        static final int PILOT_ATTEMPTS = 200;
+        static final int PILOT_ACCEPTED = 5;
+        private static final int CACHED_PLANS = 64;
+        //plans of the last used generation keys, so requests and refills don't run the pilot every time
+        private static final Map<Settings, Plan> cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Settings, Plan> eldest) {
+                return size() > CACHED_PLANS;
+            }
+        });
+
+        /**
+         * a plan without checks, generation is never stopped
+         */
+        static Plan unchecked(Settings s) {
+            return new Plan("", s, Double.NaN, Integer.MAX_VALUE);
+        }
+
+        /**
+         * checks s and measures how many attempts a network takes, throws an IllegalArgumentException with the reason
+         * if the ranges are wrong or no network meets the conditions
+         */
+        static Plan of(String name, Settings s) {
+            String prefix = name.isEmpty() ? "" : "profile " + name + ": ";
+            if (s.resistors < 0 || s.capacitors < 0 || s.inductors < 0 || s.maxUselessResistors < 0)
+                throw new IllegalArgumentException(prefix + "numbers of components and -maxUseless can't be negative");
+            if (s.minPartValue > s.maxPartValue || s.minVoltage > s.maxVoltage)
+                throw new IllegalArgumentException(prefix + "-minPart and -minV can't be larger than -maxPart and -maxV");
+
+            SplittableRandom random = new SplittableRandom(seed);
+            int attempts = 0;
+            int accepted = 0;
+            while (attempts < PILOT_ATTEMPTS && accepted < PILOT_ACCEPTED)
+            {
+                attempts++;
+                Network n = generateNetwork(s, random);
+                if (n.getMaxComponentsPerCircuit() <= s.maxComponentsPerCircuit
+                        && getNumOfUselessResistors(n.solve(true, 5)) <= s.maxUselessResistors)
+                    accepted++;
+            }
+            if (accepted == 0)
+                throw new IllegalArgumentException(prefix + "no network found in " + attempts + " attempts that meets -maxComp "
+                        + s.maxComponentsPerCircuit + " and -maxUseless " + s.maxUselessResistors);
+            double expected = (double) attempts / accepted;
+            //far beyond the estimate, so only exercises the generator can't find are stopped
+            return new Plan(name, s, expected, (int) Math.min(Integer.MAX_VALUE, Math.max(1000, 100 * expected)));
+        }
+
+        /**
+         * returns the plan of the generation key of s, see Plan.of. Only its maxAttempts belong to s, its settings are
+         * the key
+         */
+        static Plan cached(Settings s) {
+            Settings key = s.getGenerationKey();
+            Plan plan = cache.get(key);
+            if (plan == null)
+            {
+                plan = of("", key);
+                cache.put(key, plan);
+            }
+            return plan;
+        }
+
+        /**
+         * reads the profiles of file, one per line as "name: options", options like on the command line. Options that
+         * aren't given are taken from defaults. Lines starting with # are comments. Only the profiles in names are used
+         * if names isn't null
+         */
+        static ArrayList<Plan> readProfiles(String filename, Settings defaults, List<String> names) {
+            ArrayList<Plan> plans = new ArrayList<>();
+            HashSet<String> found = new HashSet<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(filename)))
+            {
+                String line;
+                int number = 0;
+                while ((line = reader.readLine()) != null)
+                {
+                    number++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#"))
+                        continue;
+                    int split = line.indexOf(':');
+                    String name = split < 0 ? "" : line.substring(0, split).trim();
+                    if (name.isEmpty() || !found.add(name))
+                        throw new IllegalArgumentException(filename + " line " + number + ": every profile needs its own name before \":\"");
+                    if (names != null && !names.contains(name))
+                        continue;
+                    String options = line.substring(split + 1).trim();
+                    String[] words = options.isEmpty() ? new String[0] : options.split("\\s+");
+                    HashMap<String, String> map = new HashMap<>();
+                    for (int i = 0; i + 1 < words.length; i += 2) map.put(words[i], words[i + 1]);
+                    Settings s;
+                    try
+                    {
+                        s = Settings.read(map, defaults);
+                    } catch (RuntimeException e)
+                    {
+                        s = null;
+                    }
+                    if (s == null || !map.isEmpty() || words.length % 2 != 0)
+                        throw new IllegalArgumentException(filename + " line " + number + ": wrong options, options are:\n" + Settings.OPTIONS);
+                    plans.add(of(name, s));
+                }
+            } catch (IOException e)
+            {
+                throw new IllegalArgumentException("can't read " + filename + ": " + e.getMessage());
+            }
+            if (names != null && !found.containsAll(names))
+                throw new IllegalArgumentException("profiles not in " + filename + ": " + names.stream().filter(n -> !found.contains(n)).toList());
+            if (plans.isEmpty())
+                throw new IllegalArgumentException("no profiles in " + filename);
+            return plans;
+        }
+    }
+
+    /**
+     * a generated and solved network with the voltage of its source
+     */
+    static class Exercise {
+        final Network network;
+        final int voltage;
+        final Solution[] solutions; //{t0, tInf}
+        //order of the components in the texts, the same for all texts and variants, so it is only sorted once
+        private int[] order;
+        private SolutionWriter orderFormat;
+
+        Exercise(Network network, int voltage, Solution[] solutions) {
+            this.network = network;
+            this.voltage = voltage;
+            this.solutions = solutions;
+        }
+
+        /**
+         * returns this exercise with another voltage and the values now in solutions, the order of the texts only
+         * depends on the names of the components, so it is shared
+         */
+        Exercise withVoltage(int voltage) {
+            Exercise variant = new Exercise(network, voltage, solutions);
+            variant.order = order;
+            variant.orderFormat = orderFormat;
+            return variant;
+        }
+
+        /**
+         * returns the names of the texts of this exercise for the evaluation time of s, the task and one or two solutions
+         */
+        ArrayList<String> getTextNames(Settings s) {
+            ArrayList<String> names = new ArrayList<>();
+            names.add("Task");
+            if (s.tConf.equals("both"))
+            {
+                names.add("t0 Solution");
+                names.add("tInf Solution");
+            }
+            else
+                names.add(s.tConf + " Solution");
+            return names;
+        }
+
+        /**
+         * writes the text with the given name as plain text, see getTextNames
+         */
+        void writeText(String name, Writer writer) throws IOException {
+            writeText(name, SolutionWriter.TEXT, writer);
+        }
+
+        /**
+         * writes the text with the given name in format
+         */
+        void writeText(String name, SolutionWriter format, Writer writer) throws IOException {
+            if (order == null || orderFormat != format)
+            {
+                order = format.getOrder(solutions[0].components);
+                orderFormat = format;
+            }
+            if (name.equals("Task"))
+                format.writeTask(writer, network, solutions[0], order, voltage);
+            else
+            {
+                boolean t0 = name.startsWith("t0");
+                format.writeSolution(writer, network, solutions[t0 ? 0 : 1], order, voltage, t0);
+            }
+        }
+    }
+
+    /**
+     * writes the task and the solutions of an exercise in one of the formats of -format. Every text is built in memory
+     * and written at once, values are only rounded for the output. The components are written in the order of
+     * getOrder, which is the same for all texts of an exercise
+     */
+    abstract static class SolutionWriter {
+        static final SolutionWriter TEXT = new TextWriter();
+        static final SolutionWriter JSONL = new JsonLinesWriter();
+        static final SolutionWriter CSV = new CsvWriter();
+        static final SolutionWriter LATEX = new LatexWriter();
+
+        static SolutionWriter of(String name) {
+            return switch (name)
+            {
+                case "text" -> TEXT;
+                case "jsonl" -> JSONL;
+                case "csv" -> CSV;
+                case "latex" -> LATEX;
+                default -> throw new IllegalArgumentException("unknown format " + name);
+            };
+        }
+
+        /**
+         * returns the extension of the files, with dot
+         */
+        abstract String getExtension();
+
+        /**
+         * returns the indices of the components in the order they are written, by default their ids (drawing order)
+         */
+        int[] getOrder(Component[] components) {
+            int[] order = new int[components.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            return order;
+        }
+
+        /**
+         * writes the network, the voltage and the resistances of the resistors
+         */
+        abstract void writeTask(Writer writer, Network n, Solution values, int[] order, int voltage) throws IOException;
+
+        /**
+         * writes the total resistance and current and resistance, voltage and current of every component
+         */
+        abstract void writeSolution(Writer writer, Network n, Solution values, int[] order, int voltage, boolean t0) throws IOException;
+    }
+
+    /**
+     * the original format, sorted by name:
+     * "R1: [Resistance, Voltage, Current]" for solutions, "R1: 5.0 Ω" for tasks
+     */
+    static class TextWriter extends SolutionWriter {
+        String getExtension() {
+            return ".txt";
+        }
+
+        int[] getOrder(Component[] components) {
+            Integer[] sorted = new Integer[components.length];
+            for (int i = 0; i < sorted.length; i++) sorted[i] = i;
+            Arrays.sort(sorted, Comparator.comparing(i -> components[i].name));
+            int[] order = new int[sorted.length];
+            for (int i = 0; i < order.length; i++) order[i] = sorted[i];
+            return order;
+        }
+
+        void writeTask(Writer writer, Network n, Solution values, int[] order, int voltage) throws IOException {
+            StringBuilder text = new StringBuilder().append(n).append("\n\n").append(voltage).append("V\n");
+            for (int i : order)
+            {
+                String key = values.components[i].name;
+                if (key.charAt(0) == 'R') //only resistors
+                    text.append(key).append(": ").append(round(values.resistance[i])).append(" Ω\n");
+            }
+            writer.write(text.toString());
+        }
+
+        void writeSolution(Writer writer, Network n, Solution values, int[] order, int voltage, boolean t0) throws IOException {
+            double resistance = Math.round(n.getResistance(t0) * 1000) / 1000.0;
+            double current = Math.round(voltage / resistance * 1000) / 1000.0;
+            StringBuilder text = new StringBuilder().append(n).append("\n\n");
+            text.append(resistance).append(" Ω  ").append(voltage).append("V  ").append(current).append("A\ncomponent: [Resistance, Voltage, Current]\n");
+            for (int i : order)
+                text.append(values.components[i].name).append(": [").append(round(values.resistance[i])).append(", ")
+                        .append(round(values.voltage[i])).append(", ").append(round(values.current[i])).append("]\n");
+            writer.write(text.toString());
+        }
+    }
+
+    /**
+     * one JSON object per line, first the network with its totals, then one line for every component. Values that
+     * are unknown in a task are left out, infinite resistances are written as "Infinity"
+     */
+    static class JsonLinesWriter extends SolutionWriter {
+        String getExtension() {
+            return ".jsonl";
+        }
+
+        void writeTask(Writer writer, Network n, Solution values, int[] order, int voltage) throws IOException {
+            StringBuilder text = new StringBuilder("{\"network\": ").append(jsonString(n.toString()))
+                    .append(", \"voltage\": ").append(voltage).append("}\n");
+            for (int i : order)
+                if (values.components[i].name.charAt(0) == 'R')
+                    text.append("{\"component\": ").append(jsonString(values.components[i].name)).append(", \"resistance\": ")
+                            .append(number(values.resistance[i])).append("}\n");
+            writer.write(text.toString());
+        }
+
+        void writeSolution(Writer writer, Network n, Solution values, int[] order, int voltage, boolean t0) throws IOException {
+            double resistance = n.getResistance(t0);
+            StringBuilder text = new StringBuilder("{\"network\": ").append(jsonString(n.toString()))
+                    .append(", \"time\": \"").append(t0 ? "t0" : "tInf").append("\", \"resistance\": ").append(number(resistance))
+                    .append(", \"voltage\": ").append(voltage).append(", \"current\": ").append(number(voltage / resistance)).append("}\n");
+            for (int i : order)
+                text.append("{\"component\": ").append(jsonString(values.components[i].name))
+                        .append(", \"resistance\": ").append(number(values.resistance[i]))
+                        .append(", \"voltage\": ").append(number(values.voltage[i]))
+                        .append(", \"current\": ").append(number(values.current[i])).append("}\n");
+            writer.write(text.toString());
+        }
+
+        private static String number(double value) {
+            return Double.isFinite(value) ? round(value) + "" : "\"" + value + "\"";
+        }
+    }
+
+    /**
+     * a table with the columns component, resistance, voltage, current. The first line after the header is "total" with
+     * the values of the whole network, values that are unknown in a task are empty
+     */
+    static class CsvWriter extends SolutionWriter {
+        String getExtension() {
+            return ".csv";
+        }
+
+        void writeTask(Writer writer, Network n, Solution values, int[] order, int voltage) throws IOException {
+            StringBuilder text = new StringBuilder("component,resistance,voltage,current\ntotal,,").append(voltage).append(",\n");
+            for (int i : order)
+                if (values.components[i].name.charAt(0) == 'R')
+                    text.append(values.components[i].name).append(',').append(round(values.resistance[i])).append(",,\n");
+            writer.write(text.toString());
+        }
+
+        void writeSolution(Writer writer, Network n, Solution values, int[] order, int voltage, boolean t0) throws IOException {
+            double resistance = n.getResistance(t0);
+            StringBuilder text = new StringBuilder("component,resistance,voltage,current\ntotal,").append(round(resistance))
+                    .append(',').append(voltage).append(',').append(round(voltage / resistance)).append('\n');
+            for (int i : order)
+                text.append(values.components[i].name).append(',').append(round(values.resistance[i])).append(',')
+                        .append(round(values.voltage[i])).append(',').append(round(values.current[i])).append('\n');
+            writer.write(text.toString());
+        }
+    }
+
+    /**
+     * a tabular like the csv table for LaTeX documents, the network is a comment above it
+     */
+    static class LatexWriter extends SolutionWriter {
+        String getExtension() {
+            return ".tex";
+        }
+
+        void writeTask(Writer writer, Network n, Solution values, int[] order, int voltage) throws IOException {
+            StringBuilder text = begin(n).append("total & & ").append(voltage).append(" & \\\\\n");
+            for (int i : order)
+                if (values.components[i].name.charAt(0) == 'R')
+                    text.append(values.components[i].name).append(" & ").append(number(values.resistance[i])).append(" & & \\\\\n");
+            writer.write(text.append("\\end{tabular}\n").toString());
+        }
+
+        void writeSolution(Writer writer, Network n, Solution values, int[] order, int voltage, boolean t0) throws IOException {
+            double resistance = n.getResistance(t0);
+            StringBuilder text = begin(n).append("total & ").append(number(resistance)).append(" & ").append(voltage)
+                    .append(" & ").append(number(voltage / resistance)).append(" \\\\\n");
+            for (int i : order)
+                text.append(values.components[i].name).append(" & ").append(number(values.resistance[i])).append(" & ")
+                        .append(number(values.voltage[i])).append(" & ").append(number(values.current[i])).append(" \\\\\n");
+            writer.write(text.append("\\end{tabular}\n").toString());
+        }
+
+        private static StringBuilder begin(Network n) {
+            return new StringBuilder("% ").append(n).append("\n\\begin{tabular}{lrrr}\n")
+                    .append("component & $R$ in $\\Omega$ & $U$ in V & $I$ in A \\\\\n\\hline\n");
+        }
+
+        private static String number(double value) {
+            if (Double.isNaN(value))
+                return "--";
+            if (Double.isInfinite(value))
+                return value > 0 ? "$\\infty$" : "$-\\infty$";
+            return round(value) + "";
+        }
+    }
+
+    /**
+     * the hashes of all exercises created in this directory, saved in a file so later runs know them too. New hashes
+     * are appended to the file
+     */
+    static class HashIndex {
+        private final boolean values; //hash the resistances and the voltage too
+        private final Set<Long> hashes = ConcurrentHashMap.newKeySet();
+        private final DataOutputStream out;
+
+        HashIndex(String filename, boolean values) {
+            this.values = values;
+            File file = new File(filename);
+            try
+            {
+                if (file.exists())
+                {
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+                    {
+                        for (long i = file.length() / 8; i > 0; i--)
+                            hashes.add(in.readLong());
+                    }
+                }
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        long getHash(Network n, int voltage) {
+            long hash = n.getCanonicalHash(values);
+            return values ? mix(hash + voltage) : hash;
+        }
+
+        boolean contains(long hash) {
+            return hashes.contains(hash);
+        }
+
+        /**
+         * adds hash and returns true if it is new
+         */
+        boolean add(long hash) {
+            if (!hashes.add(hash))
+                return false;
+            try
+            {
+                synchronized (out)
+                {
+                    out.writeLong(hash);
+                    out.flush(); //a server never closes the index
+                }
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+
+        void close() {
+            try
+            {
+                synchronized (out)
+                {
+                    out.close();
+                }
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * an append-only file with all files of many exercises and an index with the record of every exercise number.
+     * The index "file.index" has 16 bytes for every number: position and length of the record in the archive, length
+     * 0 if the exercise isn't archived. A record is the number of files followed by the length of the name, the name
+     * (UTF-8), the length of the content and the content of every file. Both files are read by memory mapping
+     */
+    static class Archive {
+        private final RandomAccessFile data;
+        private final RandomAccessFile index;
+
+        Archive(String filename) {
+            try
+            {
+                data = new RandomAccessFile(filename, "rw");
+                index = new RandomAccessFile(filename + ".index", "rw");
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * appends the files of exercise number, a number archived before is replaced in the index
+         */
+        void add(int number, Map<String, byte[]> files) {
+            int length = 4;
+            for (Map.Entry<String, byte[]> file : files.entrySet())
+                length += 8 + file.getKey().getBytes(StandardCharsets.UTF_8).length + file.getValue().length;
+            ByteBuffer record = ByteBuffer.allocate(length).putInt(files.size());
+            for (Map.Entry<String, byte[]> file : files.entrySet())
+            {
+                byte[] name = file.getKey().getBytes(StandardCharsets.UTF_8);
+                record.putInt(name.length).put(name).putInt(file.getValue().length).put(file.getValue());
+            }
+            ByteBuffer entry = ByteBuffer.allocate(16);
+            //the lock keeps other runs out, synchronized the other threads, which the lock doesn't exclude
+            synchronized (this)
+            {
+                try
+                {
+                    FileLock lock = data.getChannel().lock();
+                    try
+                    {
+                        long position = data.getChannel().size();
+                        writeFully(data.getChannel(), record.flip(), position);
+                        //the index is written last, so an interrupted run never points to an incomplete record
+                        writeFully(index.getChannel(), entry.putLong(position).putLong(length).flip(), number * 16L);
+                    } finally
+                    {
+                        lock.release();
+                    }
+                } catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+        }
+
+        /**
+         * returns the files of exercise number by name, null if it isn't in the archive
+         */
+        static LinkedHashMap<String, byte[]> read(String filename, int number) {
+            try (RandomAccessFile data = new RandomAccessFile(filename, "r");
+                 RandomAccessFile index = new RandomAccessFile(filename + ".index", "r"))
+            {
+                if (index.length() < number * 16L + 16)
+                    return null;
+                ByteBuffer entry = index.getChannel().map(FileChannel.MapMode.READ_ONLY, number * 16L, 16);
+                long position = entry.getLong();
+                long length = entry.getLong();
+                if (length == 0)
+                    return null;
+                ByteBuffer record = data.getChannel().map(FileChannel.MapMode.READ_ONLY, position, length);
+                LinkedHashMap<String, byte[]> files = new LinkedHashMap<>();
+                for (int i = record.getInt(); i > 0; i--)
+                {
+                    byte[] name = new byte[record.getInt()];
+                    record.get(name);
+                    byte[] content = new byte[record.getInt()];
+                    record.get(content);
+                    files.put(new String(name, StandardCharsets.UTF_8), content);
+                }
+                return files;
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * saves the files of exercise number like createExercise without an archive, returns false if it isn't in
+         * the archive
+         */
+        static boolean extract(String filename, int number) {
+            LinkedHashMap<String, byte[]> files = read(filename, number);
+            if (files == null)
+                return false;
+            for (Map.Entry<String, byte[]> file : files.entrySet())
+            {
+                try (OutputStream out = new FileOutputStream(file.getKey()))
+                {
+                    out.write(file.getValue());
+                } catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+            return true;
+        }
+
+        void close() {
+            try
+            {
+                data.close();
+                index.close();
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * counts attempts and rejected networks and measures the time of every stage of all exercises of this run.
+     * Stages and exercises are also recorded as JFR events (rcl.Stage and rcl.Exercise)
+     */
+    static class Metrics {
+        static final int GENERATE = 0;
+        static final int SOLVE = 1;
+        static final int WRITE = 2;
+        static final int RENDER = 3;
+        static final String[] STAGES = {"generate", "solve", "write", "render"};
+
+        final long start = System.nanoTime();
+        volatile int usedThreads = 1; //threads that create exercises at the same time, set where they are started
+        final LongAdder exercises = new LongAdder();
+        final LongAdder attempts = new LongAdder();
+        final LongAdder rejectedMaxComp = new LongAdder();
+        final LongAdder rejectedUseless = new LongAdder();
+        final LongAdder rejectedDuplicate = new LongAdder();
+        final LongAdder[] stageNanos = new LongAdder[STAGES.length];
+        final LongAdder[] stageCounts = new LongAdder[STAGES.length];
+
+        Metrics() {
+            for (int i = 0; i < STAGES.length; i++)
+            {
+                stageNanos[i] = new LongAdder();
+                stageCounts[i] = new LongAdder();
+            }
+        }
+
+        StageEvent begin(int stage, String exercise) {
+            StageEvent event = new StageEvent();
+            event.exercise = exercise;
+            event.index = stage;
+            event.start = System.nanoTime();
+            event.begin();
+            return event;
+        }
+
+        void end(StageEvent event) {
+            event.end();
+            stageNanos[event.index].add(System.nanoTime() - event.start);
+            stageCounts[event.index].increment();
+            if (event.shouldCommit())
+            {
+                event.stage = STAGES[event.index];
+                event.commit();
+            }
+        }
+
+        void add(ExerciseEvent event) {
+            exercises.increment();
+            attempts.add(event.attempts);
+            rejectedMaxComp.add(event.rejectedMaxComp);
+            rejectedUseless.add(event.rejectedUseless);
+            rejectedDuplicate.add(event.rejectedDuplicate);
+            event.end();
+            event.commit();
+        }
+
+        String toJson() {
+            long attempts = this.attempts.sum();
+            long rejected = rejectedMaxComp.sum() + rejectedUseless.sum() + rejectedDuplicate.sum();
+            StringBuilder json = new StringBuilder("{\n");
+            json.append("  \"exercises\": ").append(exercises.sum()).append(",\n");
+            json.append("  \"attempts\": ").append(attempts).append(",\n");
+            json.append("  \"rejected\": {\"maxComp\": ").append(rejectedMaxComp.sum())
+                    .append(", \"maxUseless\": ").append(rejectedUseless.sum())
+                    .append(", \"duplicate\": ").append(rejectedDuplicate.sum()).append("},\n");
+            json.append("  \"rejectionRate\": ").append(attempts == 0 ? 0.0 : round((double) rejected / attempts)).append(",\n");
+            json.append("  \"seed\": ").append(seed).append(",\n");
+            json.append("  \"threads\": ").append(usedThreads).append(",\n");
+            json.append("  \"wallMs\": ").append(round((System.nanoTime() - start) / 1e6)).append(",\n");
+            json.append("  \"stages\": {");
+            for (int i = 0; i < STAGES.length; i++)
+            {
+                long n = stageCounts[i].sum();
+                double ms = stageNanos[i].sum() / 1e6;
+                json.append(i == 0 ? "\n" : ",\n").append("    \"").append(STAGES[i]).append("\": {\"count\": ").append(n)
+                        .append(", \"totalMs\": ").append(round(ms)).append(", \"meanMs\": ").append(n == 0 ? 0.0 : round(ms / n)).append("}");
+            }
+            return json.append("\n  }\n}\n").toString();
+        }
+
+        void saveToFile(String filename) {
+            try (FileWriter writer = new FileWriter(filename, StandardCharsets.UTF_8))
+            {
+                writer.write(toJson());
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * one stage of creating an exercise, the duration is the time of the stage
+     */
+    @Name("rcl.Stage")
+    @Label("Exercise Stage")
+    @Category("RCLNetworkCreator")
+    static class StageEvent extends Event {
+        @Label("Exercise")
+        String exercise;
+        @Label("Stage")
+        String stage;
+        transient int index;
+        transient long start;
+    }
+
+    /**
+     * one created exercise with the networks the quality control rejected
+     */
+    @Name("rcl.Exercise")
+    @Label("Exercise")
+    @Category("RCLNetworkCreator")
+    static class ExerciseEvent extends Event {
+        @Label("Name")
+        String name;
+        @Label("Attempts")
+        int attempts;
+        @Label("Rejected by maxComp")
+        int rejectedMaxComp;
+        @Label("Rejected by maxUseless")
+        int rejectedUseless;
+        @Label("Rejected as duplicate")
+        int rejectedDuplicate;
+    }
+
+    /**
+     * resistance, voltage and current of every component of a network, indexed by the id of the component.
+     * Creating a solution assigns the ids, so a network can be solved into its latest solution again and again
+     * without allocating anything
+     */
+    static class Solution {
+        final Component[] components;
+        final double[] resistance;
+        final double[] voltage;
+        final double[] current;
+        final SolveStack stack = new SolveStack();
+
+        Solution(Network network) {
+            this(collectIds(network));
+        }
+
+        /**
+         * creates a second solution for the same network
+         */
+        Solution(Component[] components) {
+            this.components = components;
+            resistance = new double[components.length];
+            voltage = new double[components.length];
+            current = new double[components.length];
+        }
+
+        private static Component[] collectIds(Network network) {
+            ArrayList<Component> list = new ArrayList<>();
+            network.collectComponents(list);
+            Component[] components = list.toArray(new Component[0]);
+            for (int i = 0; i < components.length; i++) components[i].id = i;
+            return components;
+        }
+
+        /**
+         * converts the solution to the format of getValuesForParts
+         */
+        HashMap<String, ArrayList<Double>> toMap() {
+            HashMap<String, ArrayList<Double>> res = new HashMap<>();
+            for (int i = 0; i < components.length; i++)
+                res.put(components[i].name, new ArrayList<>(Arrays.asList(resistance[i], voltage[i], current[i])));
+            return res;
+        }
+    }
+
+    /**
+     * a circuit of components and voltage sources between named nodes, node "0" is ground. Unlike a Network it can
+     * describe any circuit, e.g. bridges or several sources. Series-parallel circuits with one source are solved by
+     * the Network solver, all others by nodal analysis
+     */
+    static class Netlist {
+        static final double GMIN = 1e-9; //conductance to ground for parts of the circuit without a path to ground
+
+        record Branch(Component component, int from, int to) {
+        }
+
+        record Source(String name, int plus, int minus, double voltage) {
+        }
+
+        final ArrayList<String> nodeNames = new ArrayList<>(List.of("0"));
+        private final HashMap<String, Integer> nodes = new HashMap<>(Map.of("0", 0));
+        final ArrayList<Branch> branches = new ArrayList<>();
+        final ArrayList<Source> sources = new ArrayList<>();
+        private boolean treeChecked;
+        private Network tree; //the same circuit as Network, null if it isn't series-parallel
+        private boolean[] reversed; //branches that are in tree from to to from
+        private IdentityHashMap<Component, Integer> branchOf;
+
+        /**
+         * returns the number of the node name, new names get a new node
+         */
+        int node(String name) {
+            if (name.equalsIgnoreCase("gnd"))
+                return 0;
+            Integer node = nodes.get(name);
+            if (node == null)
+            {
+                node = nodeNames.size();
+                nodeNames.add(name);
+                nodes.put(name, node);
+            }
+            return node;
+        }
+
+        /**
+         * returns a new node without a name in the netlist
+         */
+        int addNode() {
+            return node(nodeNames.size() + "");
+        }
+
+        void add(Component component, int from, int to) {
+            branches.add(new Branch(component, from, to));
+            treeChecked = false;
+        }
+
+        void addSource(String name, int plus, int minus, double voltage) {
+            sources.add(new Source(name, plus, minus, voltage));
+            treeChecked = false;
+        }
+
+        /**
+         * reads a SPICE-like netlist: one part per line as name, 2 nodes and value, the first letter of the name is
+         * the type (R, C, L or V). Values may have the SPICE suffixes f, p, n, u, m, k, meg, g, t. Lines starting
+         * with * are comments, lines starting with . are ignored
+         */
+        static Netlist read(String filename) {
+            Netlist netlist = new Netlist();
+            try (BufferedReader reader = new BufferedReader(new FileReader(filename)))
+            {
+                int number = 0;
+                for (String line = reader.readLine(); line != null; line = reader.readLine())
+                {
+                    number++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("*") || line.startsWith("."))
+                        continue;
+                    String[] words = line.split("\\s+");
+                    int valueWord = words.length > 4 && words[3].equalsIgnoreCase("dc") ? 4 : 3; //V1 1 0 DC 12
+                    double value;
+                    try
+                    {
+                        if (words.length <= valueWord)
+                            throw new IllegalArgumentException();
+                        value = parseValue(words[valueWord]);
+                    } catch (IllegalArgumentException e)
+                    {
+                        throw new IllegalArgumentException(filename + " line " + number + ": expected name, 2 nodes and value");
+                    }
+                    int from = netlist.node(words[1]);
+                    int to = netlist.node(words[2]);
+                    if (value < 0 && Character.toUpperCase(words[0].charAt(0)) != 'V')
+                        throw new IllegalArgumentException(filename + " line " + number + ": negative value");
+                    switch (Character.toUpperCase(words[0].charAt(0)))
+                    {
+                        case 'R' -> netlist.add(new Resistor(words[0], value), from, to);
+                        case 'C' -> netlist.add(new Capacitor(words[0], value), from, to);
+                        case 'L' -> netlist.add(new Inductor(words[0], value), from, to);
+                        case 'V' -> netlist.addSource(words[0], from, to, value);
+                        default -> throw new IllegalArgumentException(filename + " line " + number + ": unknown part " + words[0]);
+                    }
+                }
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            return netlist;
+        }
+
+        static double parseValue(String word) {
+            String value = word.toLowerCase();
+            int end = 0;
+            while (end < value.length() && "0123456789.+-e".indexOf(value.charAt(end)) >= 0)
+                end++;
+            double number = Double.parseDouble(value.substring(0, end));
+            String suffix = value.substring(end); //anything after the suffix is a unit and ignored like in SPICE
+            if (suffix.startsWith("meg"))
+                return number * 1e6;
+            if (suffix.isEmpty())
+                return number;
+            return switch (suffix.charAt(0))
+            {
+                case 'f' -> number * 1e-15;
+                case 'p' -> number * 1e-12;
+                case 'n' -> number * 1e-9;
+                case 'u' -> number * 1e-6;
+                case 'm' -> number * 1e-3;
+                case 'k' -> number * 1e3;
+                case 'g' -> number * 1e9;
+                case 't' -> number * 1e12;
+                default -> number;
+            };
+        }
+
+        /**
+         * compiles network with voltage between its top (node 1) and bottom (node 0) into a netlist. The components
+         * are shared, the netlist is solved by the Network solver
+         */
+        static Netlist of(Network network, double voltage) {
+            Netlist netlist = new Netlist();
+            netlist.addSource("V", netlist.addNode(), 0, voltage);
+            ArrayDeque<Network> parts = new ArrayDeque<>();
+            ArrayDeque<int[]> ends = new ArrayDeque<>(); //{top, bottom} of the network at the same position in parts
+            parts.push(network);
+            ends.push(new int[]{1, 0});
+            while (!parts.isEmpty())
+            {
+                Network part = parts.pop();
+                int[] end = ends.pop();
+                if (part.isComponent())
+                    netlist.add((Component) part, end[0], end[1]);
+                else if (part instanceof Parallel)
+                {
+                    for (Network p : ((Circuit) part).parts)
+                    {
+                        parts.push(p);
+                        ends.push(end);
+                    }
+                }
+                else //serial parts are connected by new nodes
+                {
+                    ArrayList<Network> serial = ((Circuit) part).parts;
+                    int top = end[0];
+                    for (int i = 0; i < serial.size(); i++)
+                    {
+                        int bottom = i == serial.size() - 1 ? end[1] : netlist.addNode();
+                        parts.push(serial.get(i));
+                        ends.push(new int[]{top, bottom});
+                        top = bottom;
+                    }
+                }
+            }
+            netlist.treeChecked = true;
+            netlist.tree = network;
+            netlist.reversed = new boolean[netlist.branches.size()];
+            return netlist;
+        }
+
+        /**
+         * returns the voltage and current of every branch and source at t0 or in settled state. Voltages and currents
+         * go from the first to the second node of the branch or source
+         */
+        NetlistSolution solve(boolean t0) {
+            Solution solution = new Solution(getComponents());
+            for (int i = 0; i < branches.size(); i++) solution.resistance[i] = branches.get(i).component.getResistance(t0);
+            double[] sourceCurrent = new double[sources.size()];
+            NodeSets sets = new NodeSets(nodeNames.size());
+            ArrayList<Integer> fixed = fixNodes(solution.resistance, sets);
+
+            if (sources.size() == 1 && getTree() != null)
+                solveTree(t0, solution);
+            else
+            {
+                double[] conductance = new double[branches.size()];
+                for (int i = 0; i < conductance.length; i++)
+                    conductance[i] = isConductance(solution.resistance[i]) ? 1 / solution.resistance[i] : 0.0;
+                double[] potential = new NodalSystem(conductance, sets).solve(new double[nodeNames.size()]);
+                for (int i = 0; i < branches.size(); i++)
+                {
+                    double resistance = solution.resistance[i];
+                    if (resistance == 0.0)
+                        continue;
+                    Branch branch = branches.get(i);
+                    solution.voltage[i] = potential[branch.from] - potential[branch.to];
+                    solution.current[i] = Double.isInfinite(resistance) ? 0.0 : solution.voltage[i] / resistance;
+                }
+            }
+            solveFixed(solution.resistance, solution.current, sourceCurrent, fixed);
+            return new NetlistSolution(solution, sourceCurrent);
+        }
+
+        /**
+         * simulates the netlist from switching on the sources at t=0, before that all voltages and currents are 0.
+         * Returns steps + 1 rows of voltages and currents for times of end / steps apart. Capacitors and inductors are
+         * replaced by a conductance and a current source that depends on the last step (backward Euler), the
+         * conductances are the same for all steps, so the matrix is only factored once
+         */
+        TransientSolution simulate(double end, int steps) {
+            double step = end / steps;
+            int count = branches.size();
+            double[] conductance = new double[count];
+            double[] resistance = new double[count];
+            for (int i = 0; i < count; i++)
+            {
+                Component component = branches.get(i).component;
+                if (component instanceof Capacitor)
+                    conductance[i] = ((Capacitor) component).C / step;
+                else if (component instanceof Inductor)
+                    conductance[i] = step / ((Inductor) component).L;
+                else
+                    conductance[i] = isConductance(component.getResistance(true)) ? 1 / component.getResistance(true) : 0.0;
+                resistance[i] = conductance[i] == 0.0 ? component.getResistance(true) : 1 / conductance[i];
+            }
+            NodeSets sets = new NodeSets(nodeNames.size());
+            ArrayList<Integer> fixed = fixNodes(resistance, sets);
+            NodalSystem system = new NodalSystem(conductance, sets);
+
+            TransientSolution res = new TransientSolution(new double[steps + 1], new double[steps + 1][count],
+                    new double[steps + 1][count], new double[steps + 1][sources.size()]);
+            double[] injection = new double[nodeNames.size()]; //currents of the current sources into every node
+            for (int k = 1; k <= steps; k++)
+            {
+                double[] lastVoltage = res.voltage[k - 1];
+                double[] lastCurrent = res.current[k - 1];
+                double[] voltage = res.voltage[k];
+                double[] current = res.current[k];
+                Arrays.fill(injection, 0.0);
+                for (int i = 0; i < count; i++)
+                {
+                    Branch branch = branches.get(i);
+                    double source; //current of the current source from to to from
+                    if (branch.component instanceof Capacitor)
+                        source = conductance[i] * lastVoltage[i];
+                    else if (branch.component instanceof Inductor)
+                        source = -lastCurrent[i];
+                    else
+                        continue;
+                    injection[branch.from] += source;
+                    injection[branch.to] -= source;
+                }
+                double[] potential = system.solve(injection);
+                for (int i = 0; i < count; i++)
+                {
+                    if (resistance[i] == 0.0)
+                        continue;
+                    Branch branch = branches.get(i);
+                    voltage[i] = potential[branch.from] - potential[branch.to];
+                    if (branch.component instanceof Capacitor)
+                        current[i] = conductance[i] * (voltage[i] - lastVoltage[i]);
+                    else if (branch.component instanceof Inductor)
+                        current[i] = lastCurrent[i] + conductance[i] * voltage[i];
+                    else
+                        current[i] = conductance[i] * voltage[i];
+                }
+                solveFixed(resistance, current, res.sourceCurrent[k], fixed);
+                res.time[k] = k * step;
+            }
+            return res;
+        }
+
+        /**
+         * returns the name of branch i, or of source i - number of branches
+         */
+        String getName(int i) {
+            return i < branches.size() ? branches.get(i).component.name : sources.get(i - branches.size()).name;
+        }
+
+        /**
+         * returns the branches and sources (number of branches + index) sorted by name
+         */
+        Integer[] getNameOrder() {
+            Integer[] order = new Integer[branches.size() + sources.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparing(this::getName));
+            return order;
+        }
+
+        Component[] getComponents() {
+            Component[] components = new Component[branches.size()];
+            for (int i = 0; i < components.length; i++) components[i] = branches.get(i).component;
+            return components;
+        }
+
+        /**
+         * puts the nodes of shorts and sources into the same sets, they fix the voltage between their nodes. Returns
+         * the shorts and sources (-1 - index) that connected 2 sets, without loops they are a forest
+         */
+        private ArrayList<Integer> fixNodes(double[] resistance, NodeSets sets) {
+            ArrayList<Integer> fixed = new ArrayList<>();
+            for (int i = 0; i < resistance.length; i++)
+            {
+                Branch branch = branches.get(i);
+                if (resistance[i] == 0.0 && sets.union(branch.from, branch.to, 0.0, branch.component.name))
+                    fixed.add(i);
+            }
+            for (int i = 0; i < sources.size(); i++)
+            {
+                Source source = sources.get(i);
+                if (sets.union(source.plus, source.minus, source.voltage, source.name))
+                    fixed.add(-1 - i);
+            }
+            return fixed;
+        }
+
+        /**
+         * sets voltage and current of all branches except shorts with the Network solver
+         */
+        private void solveTree(boolean t0, Solution solution) {
+            Solution treeSolution = tree.solve(t0, sources.get(0).voltage);
+            if (branchOf == null)
+            {
+                branchOf = new IdentityHashMap<>();
+                for (int i = 0; i < branches.size(); i++) branchOf.put(branches.get(i).component, i);
+            }
+            for (int i = 0; i < treeSolution.components.length; i++)
+            {
+                int branch = branchOf.get(treeSolution.components[i]);
+                if (solution.resistance[branch] == 0.0)
+                    continue;
+                double sign = reversed[branch] ? -1 : 1;
+                solution.voltage[branch] = sign * treeSolution.voltage[i];
+                solution.current[branch] = sign * treeSolution.current[i];
+            }
+        }
+
+        /**
+         * the nodal analysis of the netlist for given conductances of the branches: the potentials of the sets of
+         * nodes are the solution of a sparse symmetric system, G * potentials = currents. G is factored once, so
+         * solving it again for other currents is cheap
+         */
+        private final class NodalSystem {
+            private final int[] unknown; //number of the set of every node, -1 for the ground set
+            private final int[] row; //row of every unknown in the matrix
+            private final double[] offset; //fixed potential of every node relative to its set
+            private final double groundPotential; //potential of the root of the ground set
+            private final EnvelopeMatrix matrix;
+            private final double[] rhs; //currents from the fixed voltages
+
+            NodalSystem(double[] conductance, NodeSets sets) {
+                //ground is node 0, or the minus of the first source if the netlist doesn't use node 0
+                int ground = 0;
+                if (!sources.isEmpty() && branches.stream().noneMatch(b -> b.from == 0 || b.to == 0)
+                        && sources.stream().noneMatch(s -> s.plus == 0 || s.minus == 0))
+                    ground = sources.get(0).minus;
+                int groundSet = sets.find(ground);
+                groundPotential = -sets.offset(ground);
+
+                unknown = new int[nodeNames.size()];
+                offset = new double[nodeNames.size()];
+                Arrays.fill(unknown, -1);
+                int unknowns = 0;
+                for (int node = 0; node < unknown.length; node++)
+                    if (sets.find(node) == node && node != groundSet)
+                        unknown[node] = unknowns++;
+                for (int node = 0; node < unknown.length; node++)
+                {
+                    unknown[node] = unknown[sets.find(node)];
+                    offset[node] = sets.offset(node);
+                }
+
+                //neighbors of every unknown through conductances
+                int[] adjacencyStart = new int[unknowns + 1];
+                boolean[] grounded = new boolean[unknowns];
+                for (int i = 0; i < branches.size(); i++)
+                {
+                    if (conductance[i] == 0.0)
+                        continue;
+                    int a = unknown[branches.get(i).from];
+                    int b = unknown[branches.get(i).to];
+                    if (a >= 0 && b >= 0 && a != b)
+                    {
+                        adjacencyStart[a + 1]++;
+                        adjacencyStart[b + 1]++;
+                    }
+                    else if (a != b)
+                        grounded[Math.max(a, b)] = true;
+                }
+                for (int i = 0; i < unknowns; i++) adjacencyStart[i + 1] += adjacencyStart[i];
+                int[] adjacency = new int[adjacencyStart[unknowns]];
+                int[] next = Arrays.copyOf(adjacencyStart, unknowns);
+                for (int i = 0; i < branches.size(); i++)
+                {
+                    int a = unknown[branches.get(i).from];
+                    int b = unknown[branches.get(i).to];
+                    if (conductance[i] != 0.0 && a >= 0 && b >= 0 && a != b)
+                    {
+                        adjacency[next[a]++] = b;
+                        adjacency[next[b]++] = a;
+                    }
+                }
+
+                int[] component = new int[unknowns];
+                int[] order = reverseCuthillMcKee(adjacencyStart, adjacency, component);
+                row = new int[unknowns];
+                for (int i = 0; i < unknowns; i++) row[order[i]] = i;
+                int[] first = new int[unknowns];
+                for (int i = 0; i < unknowns; i++)
+                {
+                    first[row[i]] = row[i];
+                    for (int k = adjacencyStart[i]; k < adjacencyStart[i + 1]; k++)
+                        first[row[i]] = Math.min(first[row[i]], row[adjacency[k]]);
+                }
+
+                matrix = new EnvelopeMatrix(first);
+                rhs = new double[unknowns];
+                for (int i = 0; i < branches.size(); i++)
+                {
+                    Branch branch = branches.get(i);
+                    int a = unknown[branch.from];
+                    int b = unknown[branch.to];
+                    if (conductance[i] == 0.0 || a == b)
+                        continue;
+                    double g = conductance[i];
+                    double fixed = offset[branch.from] - offset[branch.to]; //voltage of the sources inside the sets
+                    if (a >= 0)
+                    {
+                        matrix.add(row[a], row[a], g);
+                        rhs[row[a]] -= g * fixed - (b < 0 ? g * groundPotential : 0);
+                    }
+                    if (b >= 0)
+                    {
+                        matrix.add(row[b], row[b], g);
+                        rhs[row[b]] += g * fixed + (a < 0 ? g * groundPotential : 0);
+                    }
+                    if (a >= 0 && b >= 0)
+                        matrix.add(row[a], row[b], -g);
+                }
+                //parts without a path to ground get one, otherwise their potential is undefined
+                boolean[] componentGrounded = new boolean[unknowns];
+                for (int i = 0; i < unknowns; i++)
+                    componentGrounded[component[i]] |= grounded[i];
+                for (int i = 0; i < unknowns; i++)
+                {
+                    if (!componentGrounded[component[i]])
+                    {
+                        componentGrounded[component[i]] = true;
+                        matrix.add(row[i], row[i], GMIN);
+                    }
+                }
+                matrix.factor();
+            }
+
+            /**
+             * returns the potential of every node with the given currents flowing into the nodes
+             */
+            double[] solve(double[] injection) {
+                double[] x = rhs.clone();
+                for (int node = 0; node < injection.length; node++)
+                    if (unknown[node] >= 0)
+                        x[row[unknown[node]]] += injection[node];
+                matrix.solve(x);
+                double[] potential = new double[unknown.length];
+                for (int node = 0; node < potential.length; node++)
+                    potential[node] = (unknown[node] < 0 ? groundPotential : x[row[unknown[node]]]) + offset[node];
+                return potential;
+            }
+        }
+
+        private static boolean isConductance(double resistance) {
+            return resistance != 0.0 && !Double.isInfinite(resistance);
+        }
+
+        /**
+         * sets the currents of shorts and sources from the currents of the other branches. The fixed ones are a forest,
+         * so the current of every leaf is known. Shorts in a loop of shorts don't have a single solution and get NaN
+         */
+        private void solveFixed(double[] resistance, double[] current, double[] sourceCurrent, ArrayList<Integer> fixed) {
+            int nodeCount = nodeNames.size();
+            double[] out = new double[nodeCount]; //current leaving every node through branches not in fixed
+            for (int i = 0; i < branches.size(); i++)
+            {
+                if (resistance[i] == 0.0)
+                {
+                    current[i] = Double.NaN;
+                    continue;
+                }
+                out[branches.get(i).from] += current[i];
+                out[branches.get(i).to] -= current[i];
+            }
+            Arrays.fill(sourceCurrent, Double.NaN);
+            int[] from = new int[fixed.size()];
+            int[] to = new int[fixed.size()];
+            int[] degree = new int[nodeCount];
+            int[] edgeStart = new int[nodeCount + 1];
+            for (int k = 0; k < fixed.size(); k++)
+            {
+                int i = fixed.get(k);
+                from[k] = i >= 0 ? branches.get(i).from : sources.get(-1 - i).plus;
+                to[k] = i >= 0 ? branches.get(i).to : sources.get(-1 - i).minus;
+                degree[from[k]]++;
+                degree[to[k]]++;
+            }
+            for (int node = 0; node < nodeCount; node++) edgeStart[node + 1] = edgeStart[node] + degree[node];
+            int[] edges = new int[edgeStart[nodeCount]];
+            int[] next = Arrays.copyOf(edgeStart, nodeCount);
+            for (int k = 0; k < fixed.size(); k++)
+            {
+                edges[next[from[k]]++] = k;
+                edges[next[to[k]]++] = k;
+            }
+            boolean[] used = new boolean[fixed.size()];
+            ArrayDeque<Integer> leaves = new ArrayDeque<>();
+            for (int node = 0; node < nodeCount; node++)
+                if (degree[node] == 1)
+                    leaves.push(node);
+            while (!leaves.isEmpty())
+            {
+                int leaf = leaves.pop();
+                if (degree[leaf] != 1)
+                    continue;
+                int k = edgeStart[leaf];
+                while (used[edges[k]]) k++;
+                int edge = edges[k];
+                used[edge] = true;
+                int other = from[edge] == leaf ? to[edge] : from[edge];
+                //everything leaving the leaf comes through its last edge
+                double flow = (from[edge] == leaf ? -out[leaf] : out[leaf]) + 0.0; //+ 0.0 turns -0.0 into 0.0
+                int i = fixed.get(edge);
+                if (i >= 0)
+                    current[i] = flow;
+                else
+                    sourceCurrent[-1 - i] = flow;
+                out[other] += out[leaf];
+                degree[leaf]--;
+                if (--degree[other] == 1)
+                    leaves.push(other);
+            }
+        }
+
+        /**
+         * returns the circuit as Network if it is series-parallel between the nodes of its only source, else null.
+         * The components are moved into the returned network
+         */
+        Network getTree() {
+            if (!treeChecked)
+            {
+                treeChecked = true;
+                tree = sources.size() == 1 ? reduce(sources.get(0).plus, sources.get(0).minus) : null;
+            }
+            return tree;
+        }
+
+        /**
+         * replaces 2 parts between the same nodes by a parallel part and the 2 parts at a node with only 2 neighbors
+         * by a serial part, until one part between plus and minus is left or nothing can be replaced
+         */
+        private Network reduce(int plus, int minus) {
+            if (plus == minus)
+                return null;
+            ArrayList<HashMap<Integer, Reduced>> neighbors = new ArrayList<>(); //the part to every neighbor
+            for (int node = 0; node < nodeNames.size(); node++) neighbors.add(new HashMap<>());
+            for (int i = 0; i < branches.size(); i++)
+            {
+                Branch branch = branches.get(i);
+                if (branch.from == branch.to)
+                    return null;
+                connect(neighbors, new Reduced(i, branch.from, branch.to));
+            }
+            int nodesLeft = 0;
+            ArrayDeque<Integer> serialNodes = new ArrayDeque<>();
+            for (int node = 0; node < neighbors.size(); node++)
+            {
+                if (!neighbors.get(node).isEmpty())
+                    nodesLeft++;
+                if (neighbors.get(node).size() == 2 && node != plus && node != minus)
+                    serialNodes.push(node);
+            }
+            while (!serialNodes.isEmpty())
+            {
+                int node = serialNodes.pop();
+                HashMap<Integer, Reduced> parts = neighbors.get(node);
+                if (parts.size() != 2)
+                    continue;
+                Iterator<Reduced> iterator = parts.values().iterator();
+                Reduced a = iterator.next();
+                Reduced b = iterator.next();
+                parts.clear();
+                nodesLeft--;
+                int na = a.other(node);
+                int nb = b.other(node);
+                neighbors.get(na).remove(node);
+                neighbors.get(nb).remove(node);
+                connect(neighbors, Reduced.serial(a, b, node));
+                for (int n : new int[]{na, nb})
+                    if (neighbors.get(n).size() == 2 && n != plus && n != minus)
+                        serialNodes.push(n);
+            }
+            if (nodesLeft != 2 || !neighbors.get(plus).containsKey(minus))
+                return null;
+
+            //build the networks, parts before their circuit, and note which branches are used backwards
+            Reduced root = neighbors.get(plus).get(minus);
+            root.flipped = root.from != plus;
+            ArrayList<Reduced> order = new ArrayList<>();
+            ArrayDeque<Reduced> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty())
+            {
+                Reduced r = stack.pop();
+                order.add(r);
+                if (r.parts != null)
+                {
+                    for (Reduced part : r.parts)
+                    {
+                        part.flipped = r.flipped ^ part.backwards;
+                        stack.push(part);
+                    }
+                }
+            }
+            reversed = new boolean[branches.size()];
+            for (int i = order.size() - 1; i >= 0; i--)
+            {
+                Reduced r = order.get(i);
+                if (r.parts == null)
+                {
+                    reversed[r.branch] = r.flipped;
+                    r.network = branches.get(r.branch).component;
+                }
+                else
+                {
+                    ArrayList<Network> parts = new ArrayList<>(r.parts.size());
+                    for (Reduced part : r.parts) parts.add(part.network);
+                    r.network = r.serial ? new Serial(parts) : new Parallel(parts);
+                }
+            }
+            return root.network;
+        }
+
+        private static void connect(ArrayList<HashMap<Integer, Reduced>> neighbors, Reduced part) {
+            Reduced existing = neighbors.get(part.from).get(part.to);
+            if (existing != null)
+                part = Reduced.parallel(existing, part);
+            neighbors.get(part.from).put(part.to, part);
+            neighbors.get(part.to).put(part.from, part);
+        }
+
+        /**
+         * a branch or a serial or parallel circuit of reduced parts between from and to
+         */
+        private static final class Reduced {
+            final int branch; //-1 for circuits
+            final boolean serial;
+            final ArrayDeque<Reduced> parts; //null for branches
+            int from;
+            int to;
+            boolean backwards; //the part goes from to to from in its circuit
+            boolean flipped; //the part goes from to to from in the whole network
+            Network network;
+
+            Reduced(int branch, int from, int to) {
+                this.branch = branch;
+                this.from = from;
+                this.to = to;
+                serial = false;
+                parts = null;
+            }
+
+            Reduced(boolean serial, int from, int to) {
+                branch = -1;
+                this.serial = serial;
+                this.from = from;
+                this.to = to;
+                parts = new ArrayDeque<>();
+            }
+
+            int other(int node) {
+                return from == node ? to : from;
+            }
+
+            int size(boolean serial) {
+                return parts != null && this.serial == serial ? parts.size() : 1;
+            }
+
+            /**
+             * connects a and b at node, the larger part is extended so long chains are built in linear time
+             */
+            static Reduced serial(Reduced a, Reduced b, int node) {
+                if (b.size(true) > a.size(true))
+                {
+                    Reduced swap = a;
+                    a = b;
+                    b = swap;
+                }
+                boolean merge = b.parts != null && b.serial;
+                if (a.parts != null && a.serial && a.to == node) //a, b
+                {
+                    b.backwards = b.from != node;
+                    if (merge && !b.backwards)
+                        a.parts.addAll(b.parts);
+                    else
+                        a.parts.addLast(b);
+                    a.to = b.other(node);
+                    return a;
+                }
+                if (a.parts != null && a.serial) //b, a
+                {
+                    b.backwards = b.to != node;
+                    if (merge && !b.backwards)
+                        b.parts.descendingIterator().forEachRemaining(a.parts::addFirst);
+                    else
+                        a.parts.addFirst(b);
+                    a.from = b.other(node);
+                    return a;
+                }
+                Reduced res = new Reduced(true, a.other(node), b.other(node));
+                a.backwards = a.to != node;
+                b.backwards = b.from != node;
+                res.parts.add(a);
+                res.parts.add(b);
+                return res;
+            }
+
+            static Reduced parallel(Reduced a, Reduced b) {
+                if (b.size(false) > a.size(false))
+                {
+                    Reduced swap = a;
+                    a = b;
+                    b = swap;
+                }
+                b.backwards = b.from != a.from;
+                if (a.parts != null && !a.serial)
+                {
+                    if (b.parts != null && !b.serial && !b.backwards)
+                        a.parts.addAll(b.parts);
+                    else
+                        a.parts.addLast(b);
+                    return a;
+                }
+                Reduced res = new Reduced(false, a.from, a.to);
+                a.backwards = false;
+                res.parts.add(a);
+                res.parts.add(b);
+                return res;
+            }
+        }
+    }
+
+    /**
+     * the solution of a netlist: resistance, voltage and current of the branches and the current of the sources
+     */
+    record NetlistSolution(Solution branches, double[] sourceCurrent) {
+    }
+
+    /**
+     * voltage and current of every branch and current of every source (columns) at every time (rows) of a simulation
+     */
+    record TransientSolution(double[] time, double[][] voltage, double[][] current, double[][] sourceCurrent) {
+    }
+
+    /**
+     * union-find of nodes connected by shorts and voltage sources. Every node knows its potential relative to the root
+     * of its set, so each set is only one unknown of the nodal analysis
+     */
+    static class NodeSets {
+        private final int[] parent;
+        private final int[] size;
+        private final double[] offset; //potential of the node - potential of its parent
+        private final int[] path;
+
+        NodeSets(int nodes) {
+            parent = new int[nodes];
+            size = new int[nodes];
+            offset = new double[nodes];
+            path = new int[nodes];
+            for (int i = 0; i < nodes; i++)
+            {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int find(int node) {
+            int length = 0;
+            for (; parent[node] != node; node = parent[node]) path[length++] = node;
+            //the node next to the root first, so every parent already points to the root
+            for (int i = length - 2; i >= 0; i--)
+            {
+                offset[path[i]] += offset[parent[path[i]]];
+                parent[path[i]] = node;
+            }
+            return node;
+        }
+
+        /**
+         * returns potential of node - potential of the root of its set
+         */
+        double offset(int node) {
+            find(node);
+            return parent[node] == node ? 0.0 : offset[node];
+        }
+
+        /**
+         * connects a and b with potential(a) - potential(b) = voltage, returns false if they were connected before.
+         * Throws IllegalArgumentException if they were connected with another voltage, e.g. a shorted source
+         */
+        boolean union(int a, int b, double voltage, String name) {
+            int rootA = find(a);
+            int rootB = find(b);
+            double difference = offset(a) - offset(b) - voltage; //potential(rootB) - potential(rootA)
+            if (rootA == rootB)
+            {
+                if (Math.abs(difference) > 1e-9 * (1 + Math.abs(voltage)))
+                    throw new IllegalArgumentException(name + " is shorted by other sources or shorts");
+                return false;
+            }
+            if (size[rootA] < size[rootB])
+            {
+                parent[rootA] = rootB;
+                offset[rootA] = -difference;
+                size[rootB] += size[rootA];
+            }
+            else
+            {
+                parent[rootB] = rootA;
+                offset[rootB] = difference;
+                size[rootA] += size[rootB];
+            }
+            return true;
+        }
+    }
+
+    /**
+     * a symmetric positive definite matrix stored as envelope: row i holds the columns first[i] to i. The Cholesky
+     * factor has the same envelope, so an ordering that keeps neighbors close (see reverseCuthillMcKee) keeps it small
+     */
+    static class EnvelopeMatrix {
+        private final int[] first;
+        private final int[] start; //values[start[i] + j] is column j of row i
+        private final double[] values;
+
+        EnvelopeMatrix(int[] first) {
+            this.first = first;
+            start = new int[first.length];
+            int size = 0;
+            for (int i = 0; i < first.length; i++)
+            {
+                start[i] = size - first[i];
+                size += i - first[i] + 1;
+            }
+            values = new double[size];
+        }
+
+        /**
+         * adds value to (i, j) and (j, i), the smaller one must be in the envelope of the other row
+         */
+        void add(int i, int j, double value) {
+            values[start[Math.max(i, j)] + Math.min(i, j)] += value;
+        }
+
+        /**
+         * replaces the matrix by its Cholesky factor L with L * L^T = matrix
+         */
+        void factor() {
+            for (int i = 0; i < first.length; i++)
+            {
+                for (int j = first[i]; j <= i; j++)
+                {
+                    double sum = values[start[i] + j];
+                    for (int k = Math.max(first[i], first[j]); k < j; k++)
+                        sum -= values[start[i] + k] * values[start[j] + k];
+                    if (j < i)
+                        values[start[i] + j] = sum / values[start[j] + j];
+                    else if (sum <= 0)
+                        throw new IllegalStateException("matrix is not positive definite");
+                    else
+                        values[start[i] + i] = Math.sqrt(sum);
+                }
+            }
+        }
+
+        /**
+         * solves matrix * x = b with the factor, b is replaced by x
+         */
+        void solve(double[] b) {
+            for (int i = 0; i < first.length; i++)
+            {
+                double sum = b[i];
+                for (int k = first[i]; k < i; k++) sum -= values[start[i] + k] * b[k];
+                b[i] = sum / values[start[i] + i];
+            }
+            for (int i = first.length - 1; i >= 0; i--)
+            {
+                b[i] /= values[start[i] + i];
+                for (int k = first[i]; k < i; k++) b[k] -= values[start[i] + k] * b[i];
+            }
+        }
+    }
+
+    /**
+     * returns an order of the nodes of a graph that keeps neighbors close together (reverse Cuthill-McKee), so the
+     * envelope of its matrix is small. The connected components are numbered in component
+     */
+    static int[] reverseCuthillMcKee(int[] adjacencyStart, int[] adjacency, int[] component) {
+        int n = component.length;
+        Arrays.fill(component, -1);
+        long[] byDegree = new long[n]; //degree in the upper 32 bits, so sorting sorts by degree
+        for (int i = 0; i < n; i++) byDegree[i] = (long) (adjacencyStart[i + 1] - adjacencyStart[i]) << 32 | i;
+        Arrays.sort(byDegree);
+        int[] order = new int[n];
+        int[] seen = new int[n];
+        long[] next = new long[n];
+        int count = 0;
+        int components = 0;
+        for (long key : byDegree)
+        {
+            int start = (int) key;
+            if (component[start] >= 0)
+                continue;
+            //the last node found from the start is far away from it, starting there gives a narrower order
+            int head = count;
+            int tail = count;
+            order[tail++] = start;
+            seen[start] = components + 1;
+            while (head < tail)
+            {
+                int node = order[head++];
+                for (int k = adjacencyStart[node]; k < adjacencyStart[node + 1]; k++)
+                {
+                    if (seen[adjacency[k]] != components + 1)
+                    {
+                        seen[adjacency[k]] = components + 1;
+                        order[tail++] = adjacency[k];
+                    }
+                }
+            }
+            start = order[tail - 1];
+            head = count;
+            tail = count;
+            order[tail++] = start;
+            component[start] = components;
+            while (head < tail)
+            {
+                int node = order[head++];
+                int found = 0;
+                for (int k = adjacencyStart[node]; k < adjacencyStart[node + 1]; k++)
+                {
+                    int neighbor = adjacency[k];
+                    if (component[neighbor] < 0)
+                    {
+                        component[neighbor] = components;
+                        next[found++] = (long) (adjacencyStart[neighbor + 1] - adjacencyStart[neighbor]) << 32 | neighbor;
+                    }
+                }
+                Arrays.sort(next, 0, found);
+                for (int i = 0; i < found; i++) order[tail++] = (int) next[i];
+            }
+            count = tail;
+            components++;
+        }
+        for (int i = 0; i < n / 2; i++)
+        {
+            int swap = order[i];
+            order[i] = order[n - 1 - i];
+            order[n - 1 - i] = swap;
+        }
+        return order;
+    }
+
+    /**
+     * runs work for every group on the common fork/join pool, one of them on this thread, and waits for all of them
+     */
+    static <T> void forEachParallel(ArrayList<T> groups, Consumer<T> work) {
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(groups.size());
+        for (T group : groups) tasks.add(ForkJoinTask.adapt(() -> work.accept(group)));
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * networks that still have to be solved with their voltages, solving with an explicit stack works for networks
+     * of any depth. voltages holds the t0 voltage when both times are solved at once
+     */
+    static class SolveStack {
+        Network[] networks = new Network[16];
+        double[] voltages = new double[16];
+        double[] voltagesTInf = new double[16];
+        int size;
+
+        void push(Network network, double voltage, double voltageTInf) {
+            if (size == networks.length)
+            {
+                networks = Arrays.copyOf(networks, size * 2);
+                voltages = Arrays.copyOf(voltages, size * 2);
+                voltagesTInf = Arrays.copyOf(voltagesTInf, size * 2);
+            }
+            networks[size] = network;
+            voltages[size] = voltage;
+            voltagesTInf[size] = voltageTInf;
+            size++;
+        }
+
+        /**
+         * removes the top network, its voltages stay at index size until the next push
+         */
+        Network pop() {
+            Network network = networks[--size];
+            networks[size] = null;
+            return network;
+        }
+    }
+
+    /**
+     * something that can be saved as image, see writeImage
+     */
+    interface Drawing {
+        /**
+         * measures the drawing and returns its size as {width, height}
+         */
+        int[] getImageSize(Settings s);
+
+        /**
+         * draws with the sizes of the last getImageSize and returns the size
+         */
+        int[] paintMeasured(Canvas g, Settings s);
+
+        /**
+         * places everything for paintArea with the sizes of the last getImageSize
+         */
+        default void placeAll(Settings s) {
+        }
 
-        public ArrayList<Network> getContent() {
-            return parts;
+        /**
+         * like paintMeasured, but only has to draw what reaches into the area from left, top to right, bottom. Text
+         * may reach up to margin beyond the lines around it. After placeAll, different areas can be drawn at the same
+         * time. Used for images that are too large for memory, see ImageRenderer
+         */
+        default void paintArea(Canvas g, int left, int top, int right, int bottom, int margin, Settings s) {
+            paintMeasured(g, s);
         }
+    }
 
-        public void add(Network network) {
-            parts.add(network);
+    /**
+     * the curves of a simulation, voltage and current of every branch next to each other, sorted by name
+     */
+    static class TransientPlot implements Drawing {
+        private static final int WIDTH = 250; //of one curve
+        private static final int HEIGHT = 50;
+        private static final int LABEL = 60; //space for the values left of every curve
+        private final Netlist netlist;
+        private final TransientSolution values;
+
+        TransientPlot(Netlist netlist, TransientSolution values) {
+            this.netlist = netlist;
+            this.values = values;
         }
 
-        public void addAll(ArrayList<Network> networks) {
-            parts.addAll(networks);
+        public int[] getImageSize(Settings s) {
+            return new int[]{2 * (LABEL + WIDTH) + 20, 30 + netlist.branches.size() * (HEIGHT + 25) + 20};
         }
 
-        public void removeAll(Collection<Network> networks) {
-            parts.removeAll(networks);
+        public int[] paintMeasured(Canvas g, Settings s) {
+            paintArea(g, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 0, s);
+            return getImageSize(s);
         }
 
-        public int getMaxComponentsPerCircuit() {
-            int res = 0;
-            int max = 0;
-            for (Network part : parts)
+        public void paintArea(Canvas g, int left, int top, int right, int bottom, int margin, Settings s) {
+            g.drawString("voltage", LABEL, 20);
+            g.drawString("current", 2 * LABEL + WIDTH, 20);
+            int y = 30;
+            for (int i : netlist.getNameOrder())
             {
-                if (part.isComponent())
-                    res++;
-                else
-                    max = Math.max(max, part.getMaxComponentsPerCircuit());
+                if (i >= netlist.branches.size())
+                    continue;
+                if (y + HEIGHT + 25 + margin >= top && y - margin <= bottom)
+                {
+                    g.drawString(netlist.getName(i), 5, y + 12);
+                    drawCurve(g, LABEL, y + 15, values.voltage(), i);
+                    drawCurve(g, 2 * LABEL + WIDTH, y + 15, values.current(), i);
+                }
+                y += HEIGHT + 25;
             }
-            return Math.max(max, res);
+            double[] time = values.time();
+            g.drawString("0 s", LABEL, y + 5);
+            g.drawString(round(time[time.length - 1]) + " s", LABEL + WIDTH - 40, y + 5);
         }
 
-        public boolean isComponent() {
-            return false;
+        private void drawCurve(Canvas g, int x, int y, double[][] rows, int column) {
+            double min = 0;
+            double max = 0;
+            for (double[] row : rows)
+            {
+                if (Double.isFinite(row[column]))
+                {
+                    min = Math.min(min, row[column]);
+                    max = Math.max(max, row[column]);
+                }
+            }
+            if (max - min < 1e-12)
+                max = min + 1;
+            g.drawRect(x, y, WIDTH, HEIGHT);
+            g.drawString(round(max) + "", x - LABEL + 5, y + 10);
+            g.drawString(round(min) + "", x - LABEL + 5, y + HEIGHT);
+            int lastX = -1;
+            int lastY = -1;
+            for (int k = 0; k < rows.length; k++)
+            {
+                if (!Double.isFinite(rows[k][column]))
+                {
+                    lastX = -1;
+                    continue;
+                }
+                int px = x + (int) ((long) k * WIDTH / (rows.length - 1));
+                int py = y + HEIGHT - (int) Math.round((rows[k][column] - min) / (max - min) * HEIGHT);
+                if (lastX >= 0)
+                    g.drawLine(lastX, lastY, px, py);
+                lastX = px;
+                lastY = py;
+            }
         }
     }
 
-    static class Serial extends Circuit {
-        public Serial(ArrayList<Network> parts) {
-            if (parts == null)
-                this.parts = new ArrayList<>();
-            else
-                this.parts = parts;
+    /**
+     * everything a network needs to draw itself, keeps the model independent of any graphics library
+     */
+    interface Canvas {
+        void drawLine(int x1, int y1, int x2, int y2);
+
+        void drawRect(int x, int y, int width, int height);
+
+        void drawOval(int x, int y, int width, int height);
+
+        void drawString(String s, int x, int y);
+    }
+
+    /**
+     * draws on an AWT Graphics, e.g. of an image or a window
+     */
+    static class GraphicsCanvas implements Canvas {
+        private final Graphics g;
+
+        GraphicsCanvas(Graphics g) {
+            this.g = g;
         }
 
-        public HashMap<String, ArrayList<Double>> getValuesForParts(boolean t0, double voltage) {
-            HashMap<String, ArrayList<Double>> res = new HashMap<>();
-            //count how many parts have infinite resistance. If 2 or more do, none of them have voltage
-            int inf = 0;
-            for (Network part : parts)
-                if (Double.isInfinite(part.getResistance(t0)))
-                    inf++;
+        public void drawLine(int x1, int y1, int x2, int y2) {
+            g.drawLine(x1, y1, x2, y2);
+        }
 
-            for (Network part : parts)
-            {
-                double partRes = part.getResistance(t0);
-                double partVoltage = (voltage * partRes) / (getResistance(t0));
-                if (Double.isInfinite(partRes) && inf > 1)
-                    partVoltage = 0.0;
-                else if (Double.isInfinite(partRes) && Double.isInfinite(getResistance(t0))) //single inf part gets all voltage
-                    partVoltage = voltage;
-                res.putAll(part.getValuesForParts(t0, partVoltage));
-            }
-            return res;
+        public void drawRect(int x, int y, int width, int height) {
+            g.drawRect(x, y, width, height);
         }
 
-        public double getResistance(boolean t0) {
-            double res = 0;
-            for (Network part : parts) res += part.getResistance(t0);
-            return res;
+        public void drawOval(int x, int y, int width, int height) {
+            g.drawOval(x, y, width, height);
         }
 
-        public int[] draw(Graphics g, int x, int y) {
-            //saves the maximum coordinates parts of the serial used while printing to tell caller how big the
-            //complete drawing got
-            int maxX = x;
-            int maxY = y;
-            for (Network part : parts)
-            {
-                int[] res = part.draw(g, x, y);
-                y = res[1];
-                maxX = Math.max(res[0], maxX);
-                maxY = Math.max(res[1], maxY);
-            }
-            return new int[]{maxX, maxY, x + cWidth / 2};
+        public void drawString(String s, int x, int y) {
+            g.drawString(s, x, y);
         }
+    }
 
-        public String toString() {
-            String res = "Serial(";
-            for (Network part : parts) res += part.toString() + ",";
-            return res.substring(0, res.length() - 1) + ")";
+    /**
+     * writes the drawing as text to writer, begin has to be called before and end after drawing
+     */
+    abstract static class VectorCanvas implements Canvas {
+        final PrintWriter writer;
+
+        VectorCanvas(PrintWriter writer) {
+            this.writer = writer;
         }
+
+        abstract void begin(int width, int height);
+
+        abstract void end();
     }
 
-    static class Parallel extends Circuit {
+    /**
+     * draws black lines on a transparent background, the coordinates are the same as in the png
+     */
+    static class SvgCanvas extends VectorCanvas {
+        SvgCanvas(PrintWriter writer) {
+            super(writer);
+        }
 
-        public Parallel(ArrayList<Network> parts) {
-            if (parts == null)
-                this.parts = new ArrayList<>();
-            else
-                this.parts = parts;
+        void begin(int width, int height) {
+            writer.print("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width
+                    + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " " + height + "\">\n"
+                    + "<g fill=\"none\" stroke=\"black\" font-family=\"sans-serif\" font-size=\"12\">\n");
         }
 
-        public HashMap<String, ArrayList<Double>> getValuesForParts(boolean t0, double voltage) {
-            HashMap<String, ArrayList<Double>> res = new HashMap<>();
-            if (getResistance(t0) == 0.0) //check if shorted
-                voltage = 0.0;
-            for (Network part : parts) res.putAll(part.getValuesForParts(t0, voltage));
-            return res;
+        void end() {
+            writer.print("</g>\n</svg>\n");
         }
 
-        public double getResistance(boolean t0) {
-            ArrayList<Double> resistances = new ArrayList<>();
-            for (Network part : parts) resistances.add(part.getResistance(t0));
+        public void drawLine(int x1, int y1, int x2, int y2) {
+            writer.print("<line x1=\"" + x1 + "\" y1=\"" + y1 + "\" x2=\"" + x2 + "\" y2=\"" + y2 + "\"/>\n");
+        }
 
-            if (resistances.contains(0.0)) //shorted
-                return 0.0;
-            while (resistances.remove(Double.POSITIVE_INFINITY)) ;
-            if (resistances.isEmpty())
-                return Double.POSITIVE_INFINITY;
+        public void drawRect(int x, int y, int width, int height) {
+            writer.print("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\"/>\n");
+        }
 
-            double res = resistances.get(0);
-            for (int i = 1; i < resistances.size(); i++)
-            {
-                double resistance = resistances.get(i);
-                res = (res * resistance) / (res + resistance);
-            }
-            return res;
+        public void drawOval(int x, int y, int width, int height) {
+            writer.print("<ellipse cx=\"" + (x + width / 2.0) + "\" cy=\"" + (y + height / 2.0) + "\" rx=\"" + width / 2.0
+                    + "\" ry=\"" + height / 2.0 + "\"/>\n");
         }
 
-        public String toString() {
-            String res = "Parallel(";
-            for (Network part : parts) res += part.toString() + ",";
-            return res.substring(0, res.length() - 1) + ")";
+        public void drawString(String s, int x, int y) {
+            String text = s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            writer.print("<text x=\"" + x + "\" y=\"" + y + "\" fill=\"black\" stroke=\"none\">" + text + "</text>\n");
+        }
+    }
+
+    /**
+     * writes a tikzpicture for LaTeX, one unit is 1pt and y points down like in the png
+     */
+    static class TikzCanvas extends VectorCanvas {
+        TikzCanvas(PrintWriter writer) {
+            super(writer);
         }
 
-        public int[] draw(Graphics g, int x, int y) {
-            int maxX = x;
-            int maxY = y;
-            int startX = x + cWidth / 2;
-            int[] endY = new int[parts.size()]; //save all y end coords for bottom connection
-            int[] connectionX = new int[parts.size()];
+        void begin(int width, int height) {
+            writer.print("% " + width + "pt x " + height + "pt, needs \\usepackage{tikz}\n\\begin{tikzpicture}[x=1pt,y=-1pt]\n");
+        }
 
-            g.drawLine(startX, y, startX, y + lineLength); //vertical connection  for whole parallel
-            y += lineLength;
-            for (int i = 0; i < parts.size(); i++)
-            {
-                int[] res = parts.get(i).draw(g, x, y);
-                endY[i] = res[1];
-                connectionX[i] = res[2];
-                x = res[0] + 30; //30 space
-                maxX = Math.max(res[0], maxX);
-                maxY = Math.max(res[1], maxY);
-            }
-            g.drawLine(startX, y, connectionX[connectionX.length - 1], y);//horizontal top connection
-            maxY += lineLength; //for bottom line
+        void end() {
+            writer.print("\\end{tikzpicture}\n");
+        }
+
+        public void drawLine(int x1, int y1, int x2, int y2) {
+            writer.print("\\draw (" + x1 + "," + y1 + ") -- (" + x2 + "," + y2 + ");\n");
+        }
 
-            for (int i = 0; i < endY.length; i++) //draw bottom connections
-                g.drawLine(connectionX[i], endY[i], connectionX[i], maxY);
+        public void drawRect(int x, int y, int width, int height) {
+            writer.print("\\draw (" + x + "," + y + ") rectangle (" + (x + width) + "," + (y + height) + ");\n");
+        }
 
-            g.drawLine(startX, maxY, connectionX[connectionX.length - 1], maxY);//horizontal bottom connection
+        public void drawOval(int x, int y, int width, int height) {
+            writer.print("\\draw (" + (x + width / 2.0) + "," + (y + height / 2.0) + ") ellipse [x radius=" + width / 2.0
+                    + ", y radius=" + height / 2.0 + "];\n");
+        }
 
-            return new int[]{maxX, maxY, startX + cWidth / 2};
+        public void drawString(String s, int x, int y) {
+            String text = s.replaceAll("([#$%&_{}])", "\\\\$1");
+            writer.print("\\node[anchor=base west, inner sep=0pt] at (" + x + "," + y + ") {" + text + "};\n");
         }
     }
 
+    /**
+     * renders networks to png files. Only this class uses AWT and ImageIO, so they are not loaded if no image is saved
+     */
+    static class ImageRenderer {
+        private static final int MAX_BUFFER_PIXELS = 4 << 20; //larger images aren't kept for the next network
+        private static final int TILE_PIXELS = 1 << 22; //larger images are drawn in tiles of about this many pixels
+        private static final int MIN_BAND_ROWS = 64; //every band draws the networks reaching into it again
+        //every thread draws into its own image, only the part of the current network is used
+        private static final ThreadLocal<BufferedImage> buffers = new ThreadLocal<>();
 
-    abstract static class Component extends Network {
-        String name;
+        static {
+            ImageIO.setUseCache(false); //encode streams in memory instead of temporary files
+        }
 
-        public HashMap<String, ArrayList<Double>> getValuesForParts(boolean t0, double voltage) {
-            HashMap<String, ArrayList<Double>> res = new HashMap<>();
-            ArrayList<Double> al = new ArrayList<>();
-            double R = getResistance(t0);
-            al.add(0, R);
-            if (R == 0.0)
+        static void write(Drawing n, Settings s, OutputStream out) throws IOException {
+            int[] size = n.getImageSize(s);
+            if ((long) size[0] * size[1] > MAX_BUFFER_PIXELS)
             {
-                al.add(1, 0.0);
-                al.add(2, Double.POSITIVE_INFINITY);
+                writeBands(n, s, size[0], size[1], out);
+                return;
             }
-            else if (Double.isInfinite(R))
+            BufferedImage bi = getBuffer(size[0], size[1]);
+            Graphics2D g = bi.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, size[0], size[1]);
+            g.setColor(Color.WHITE);
+            if (n instanceof Network network && network.isLarge())
+                paintTiles(network, g, s);
+            else
+                n.paintMeasured(new GraphicsCanvas(g), s);
+            g.dispose();
+            ImageIO.write(bi, "png", out);
+        }
+
+        /**
+         * draws the large circuits of a network on g and every group of networks below them into its own transparent
+         * tile at the same time, then puts the tiles onto g. Graphics can't be shared between threads
+         */
+        private static void paintTiles(Network n, Graphics2D g, Settings s) {
+            ArrayList<ArrayList<Network>> groups = n.paintLarge(new GraphicsCanvas(g), s);
+            BufferedImage[] tiles = new BufferedImage[groups.size()];
+            int[][] positions = new int[groups.size()][];
+            ArrayList<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i++) indices.add(i);
+            FontMetrics metrics = g.getFontMetrics();
+            forEachParallel(indices, i -> {
+                int margin = getTextMargin(metrics, groups.get(i));
+                int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = 0, maxY = 0;
+                for (Network network : groups.get(i))
+                {
+                    minX = Math.min(minX, network.layoutX - margin);
+                    minY = Math.min(minY, network.layoutY - margin);
+                    maxX = Math.max(maxX, network.layoutX + network.layoutWidth + margin);
+                    maxY = Math.max(maxY, network.layoutY + network.layoutHeight + margin);
+                }
+                BufferedImage tile = new BufferedImage(maxX - minX, maxY - minY, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D tg = tile.createGraphics();
+                tg.setFont(g.getFont());
+                tg.setColor(Color.WHITE);
+                tg.translate(-minX, -minY);
+                for (Network network : groups.get(i)) network.drawMeasured(new GraphicsCanvas(tg), network.layoutX, network.layoutY, s);
+                tg.dispose();
+                tiles[i] = tile;
+                positions[i] = new int[]{minX, minY};
+            });
+            for (int i = 0; i < tiles.length; i++) g.drawImage(tiles[i], positions[i][0], positions[i][1], null);
+        }
+
+        /**
+         * returns how far text can reach beyond the layout of the networks, names can be wider than their component
+         */
+        private static int getTextMargin(FontMetrics metrics, ArrayList<Network> networks) {
+            int margin = metrics.getHeight();
+            for (Network network : networks)
+                for (Network part : network.getSubNetworks())
+                    if (part.isComponent())
+                        margin = Math.max(margin, metrics.stringWidth(((Component) part).name) + metrics.getHeight());
+            return margin;
+        }
+
+        /**
+         * draws an image that is too large for one buffer in bands of at least MIN_BAND_ROWS rows, which are split
+         * into tiles drawn with paintArea. Everything is drawn white on black, so every tile is packed into the band
+         * with one bit per pixel right after it is drawn, and a band is encoded as soon as all of its tiles are done.
+         * The size of the image is only limited by the disk. The tiles of a large network are drawn at the same time,
+         * several bands at once if a band has fewer tiles than the common pool has threads
+         */
+        private static void writeBands(Drawing n, Settings s, int width, int height, OutputStream out) throws IOException {
+            int bandHeight = Math.min(height, Math.max(MIN_BAND_ROWS, TILE_PIXELS / width));
+            //tiles start at multiples of 8 pixels, so they fill whole bytes of the rows
+            int tileWidth = Math.min(width, Math.max(8, TILE_PIXELS / bandHeight / 8 * 8));
+            int tilesPerBand = (width + tileWidth - 1) / tileWidth;
+            boolean parallel = n instanceof Network network && network.isLarge();
+            int bandsPerBatch = parallel ? Math.max(1, (ForkJoinPool.getCommonPoolParallelism() + 1) / tilesPerBand) : 1;
+            Graphics2D probe = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).createGraphics();
+            FontMetrics metrics = probe.getFontMetrics();
+            probe.dispose();
+            int margin = n instanceof Network network ? getTextMargin(metrics, new ArrayList<>(List.of(network)))
+                    : metrics.getHeight();
+            n.placeAll(s);
+
+            PngWriter png = new PngWriter(out, width, height);
+            int rowBytes = (width + 7) / 8;
+            byte[] bits = new byte[bandsPerBatch * bandHeight * rowBytes];
+            byte[] previous = new byte[rowBytes];
+            byte[] row = new byte[1 + rowBytes]; //filter type and 8 pixels per byte
+            row[0] = 2; //up, most lines of a network are vertical, so most bytes are the same as in the row above
+            for (int batchTop = 0; batchTop < height; batchTop += bandsPerBatch * bandHeight)
             {
-                al.add(1, voltage);
-                al.add(2, 0.0);
+                int top = batchTop;
+                int rows = Math.min(bandsPerBatch * bandHeight, height - top);
+                ArrayList<Integer> indices = new ArrayList<>();
+                for (int i = 0; i < (rows + bandHeight - 1) / bandHeight * tilesPerBand; i++) indices.add(i);
+                Consumer<Integer> draw = i -> {
+                    int tileLeft = i % tilesPerBand * tileWidth;
+                    int tileTop = top + i / tilesPerBand * bandHeight;
+                    int w = Math.min(tileWidth, width - tileLeft);
+                    int h = Math.min(bandHeight, height - tileTop);
+                    //a gray image is drawn exactly like the rgb images, a binary one isn't
+                    BufferedImage tile = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+                    Graphics2D g = tile.createGraphics();
+                    g.setColor(Color.WHITE);
+                    g.translate(-tileLeft, -tileTop);
+                    n.paintArea(new GraphicsCanvas(g), tileLeft, tileTop, tileLeft + w - 1, tileTop + h - 1, margin, s);
+                    g.dispose();
+                    ByteBuffer pixels = ByteBuffer.wrap(((DataBufferByte) tile.getRaster().getDataBuffer()).getData());
+                    for (int y = 0; y < h; y++)
+                    {
+                        int offset = (tileTop - top + y) * rowBytes + tileLeft / 8;
+                        int x = 0;
+                        for (; x + 8 <= w; x += 8)
+                        {
+                            //gathers the highest bit of 8 pixels, 0 for black and 1 for white, into one byte in order
+                            long eight = pixels.getLong(y * w + x) & 0x8080808080808080L;
+                            bits[offset + x / 8] = (byte) (eight * 0x0002040810204081L >>> 56);
+                        }
+                        if (x < w)
+                        {
+                            int packed = 0;
+                            for (int k = 0; x + k < w; k++) packed |= (pixels.get(y * w + x + k) & 0x80) >> k;
+                            bits[offset + x / 8] = (byte) packed;
+                        }
+                    }
+                };
+                if (parallel)
+                    forEachParallel(indices, draw);
+                else
+                    indices.forEach(draw);
+                for (int y = 0; y < rows; y++)
+                {
+                    for (int i = 0; i < rowBytes; i++)
+                    {
+                        byte current = bits[y * rowBytes + i];
+                        row[1 + i] = (byte) (current - previous[i]);
+                        previous[i] = current;
+                    }
+                    png.writeRow(row);
+                }
             }
-            else
+            png.finish();
+        }
+
+        /**
+         * returns an image of exactly width x height, backed by the buffer of this thread if it is large enough
+         */
+        private static BufferedImage getBuffer(int width, int height) {
+            if ((long) width * height > MAX_BUFFER_PIXELS)
+                return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            BufferedImage buffer = buffers.get();
+            if (buffer == null || buffer.getWidth() < width || buffer.getHeight() < height)
             {
-                al.add(1, voltage);
-                al.add(2, voltage / R);
+                //grow in both directions at once, so alternating tall and wide networks don't reallocate every time
+                int w = buffer == null ? width : Math.max(width, buffer.getWidth());
+                int h = buffer == null ? height : Math.max(height, buffer.getHeight());
+                if ((long) w * h > MAX_BUFFER_PIXELS)
+                    return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                buffer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                buffers.set(buffer);
             }
+            return buffer.getSubimage(0, 0, width, height);
+        }
+    }
 
-            res.put(name, al);
-            return res;
+    /**
+     * writes a png row by row, so images don't have to be in memory as a whole. Black and white with 1 bit per
+     * pixel, every row is compressed as soon as it is added and the compressed data is written in IDAT chunks of
+     * CHUNK bytes
+     */
+    static class PngWriter {
+        private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        private static final int CHUNK = 1 << 16;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater();
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[CHUNK];
+        private int filled; //compressed bytes in buffer
+
+        PngWriter(OutputStream out, int width, int height) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.write(SIGNATURE);
+            //bit depth 1, color type 0 (grayscale), default compression and filter method, no interlace
+            byte[] header = ByteBuffer.allocate(13).putInt(width).putInt(height).put((byte) 1).put((byte) 0).array();
+            writeChunk("IHDR", header, header.length);
         }
 
-        public int[] draw(Graphics g, int x, int y) {
-            //g.drawLine(x, y, x + cWidth, y + cHeight);
-            g.drawLine(x + cWidth / 2, y, x + cWidth / 2, y + lineLength);
-            g.drawRect(x, y + lineLength, cWidth, cHeight); //50 100
-            g.drawString(name, x + cWidth / 4, y + lineLength + cHeight / 2);
+        /**
+         * adds the next row: the filter type followed by 8 pixels per byte, the first in the highest bit
+         */
+        void writeRow(byte[] row) throws IOException {
+            deflater.setInput(row);
+            while (!deflater.needsInput()) deflate();
+        }
 
-            return new int[]{x + cWidth, y + lineLength + cHeight, x + cWidth / 2};
+        /**
+         * writes the rest of the image, doesn't close the stream
+         */
+        void finish() throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) deflate();
+            deflater.end();
+            if (filled > 0)
+                writeChunk("IDAT", buffer, filled);
+            writeChunk("IEND", buffer, 0);
+            out.flush();
         }
 
-        public int getMaxComponentsPerCircuit() {
-            return 1;
+        private void deflate() throws IOException {
+            filled += deflater.deflate(buffer, filled, CHUNK - filled);
+            if (filled == CHUNK)
+            {
+                writeChunk("IDAT", buffer, filled);
+                filled = 0;
+            }
         }
 
-        public boolean isComponent() {
-            return true;
+        private void writeChunk(String type, byte[] data, int length) throws IOException {
+            byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+            crc.reset();
+            crc.update(name);
+            crc.update(data, 0, length);
+            out.writeInt(length);
+            out.write(name);
+            out.write(data, 0, length);
+            out.writeInt((int) crc.getValue());
         }
     }
 
-    static class Resistor extends Component {
-        double R; //in Ohm
+    /**
+     * keeps up to size ready exercises for each of the last used parameter sets, so a request doesn't wait for
+     * generation no matter how hard its conditions are. Taken exercises are replaced in the background, parameter
+     * sets that aren't used anymore are dropped when more than maxSets are in use
+     */
+    static class ExercisePool {
+        /**
+         * an exercise with the seed it was created from (as exercise 0)
+         */
+        record Ready(long seed, Exercise exercise) {
+        }
 
-        public Resistor(String name, double R) {
-            this.name = name;
-            this.R = R;
+        private static class Entry {
+            final ArrayDeque<Ready> ready = new ArrayDeque<>();
+            boolean filling; //a refill task is running for this entry
+            boolean dropped; //removed from the pool, the refill task stops
+            boolean failed; //no network was found for the parameters, requests generate their own exercise
         }
 
-        public double getResistance(boolean t0) {
-            return R;
+        private final int size;
+        private final LinkedHashMap<Settings, Entry> entries;
+        private final ExecutorService refill;
+
+        ExercisePool(int size, int maxSets, int threads) {
+            this.size = size;
+            //access order, so the eldest entry is the least recently used
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Settings, Entry> eldest) {
+                    if (size() <= maxSets)
+                        return false;
+                    eldest.getValue().dropped = true;
+                    return true;
+                }
+            };
+            refill = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "exercise pool");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY); //requests come first
+                return thread;
+            });
         }
 
-        public String toString() {
-            return "R";
+        /**
+         * returns a ready exercise for s and starts refilling, null if there is none yet
+         */
+        synchronized Ready take(Settings s) {
+            Settings key = s.getGenerationKey();
+            Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+            Ready ready = entry.ready.poll();
+            if (!entry.filling && !entry.failed)
+            {
+                entry.filling = true;
+                refill.execute(() -> fill(key, entry));
+            }
+            return ready;
+        }
+
+        /**
+         * creates exercises until entry is full again, generation runs without holding the lock. If no network is
+         * found for key, the entry isn't filled again and the reason is printed, the executor would lose it
+         */
+        private void fill(Settings key, Entry entry) {
+            while (true)
+            {
+                synchronized (this)
+                {
+                    if (entry.dropped || entry.ready.size() >= size)
+                    {
+                        entry.filling = false;
+                        return;
+                    }
+                }
+                long seed = new SplittableRandom().nextLong();
+                Ready ready;
+                try
+                {
+                    ready = new Ready(seed, generateExercise(key, "pool " + seed, getRandom(seed, 0), Plan.cached(key).maxAttempts()));
+                } catch (RuntimeException e)
+                {
+                    System.err.println("pool stopped for " + key + ": " + e.getMessage());
+                    synchronized (this)
+                    {
+                        entry.filling = false;
+                        entry.failed = true;
+                    }
+                    return;
+                }
+                synchronized (this)
+                {
+                    entry.ready.add(ready);
+                }
+            }
         }
     }
 
-    static class Capacitor extends Component {
-        double C; //in F
+    /**
+     * answers requests for exercises over http, so a running JVM can create exercises for other programs.
+     * GET /exercise takes the options of an exercise (see Settings) and seed and id as query parameters, e.g.
+     * /exercise?nRes=5&image=svg, and answers with a JSON object with the texts and the image. GET /metrics returns
+     * the metrics of all exercises created so far
+     */
+    static class ExerciseServer {
+        private static ExercisePool pool; //null if exercises are created for every request
 
-        public Capacitor(String name, double C) {
-            this.name = name;
-            this.C = C;
+        static void start(int port) {
+            try
+            {
+                if (poolSize > 0)
+                {
+                    pool = new ExercisePool(poolSize, poolSets, threads);
+                    metrics.usedThreads = threads; //requests have their own threads
+                    pool.take(settings); //start filling the pool for the defaults
+                }
+                HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+                server.createContext("/exercise", ExerciseServer::handleExercise);
+                server.createContext("/metrics", exchange -> send(exchange, 200, "application/json", metrics.toJson()));
+                server.setExecutor(newPerTaskExecutor());
+                server.start();
+                System.out.println("answering requests on http://localhost:" + server.getAddress().getPort() + "/exercise");
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
         }
 
-        public double getResistance(boolean t0) {
-            return t0 ? 0 : Double.POSITIVE_INFINITY;
+        /**
+         * every request gets its own virtual thread, or a thread of a growing pool before Java 21
+         */
+        static ExecutorService newPerTaskExecutor() {
+            try
+            {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e)
+            {
+                return Executors.newCachedThreadPool();
+            }
         }
 
-        public String toString() {
-            return "C";
+        static void handleExercise(HttpExchange exchange) throws IOException {
+            Settings s;
+            Long requestSeed; //null if any exercise can be used
+            long number;
+            try
+            {
+                HashMap<String, String> map = readQuery(exchange.getRequestURI().getRawQuery());
+                s = Settings.read(map, settings);
+                requestSeed = map.containsKey("-seed") ? Long.parseLong(map.remove("-seed")) : null;
+                number = map.containsKey("-id") ? Long.parseLong(map.remove("-id")) : 0;
+                if (!map.isEmpty() || !exchange.getRequestMethod().equals("GET"))
+                    throw new IllegalArgumentException();
+            } catch (Exception e)
+            {
+                send(exchange, 400, "text/plain", "Wrong parameters, options are (without -):\n" + Settings.OPTIONS
+                        + "-seed: start value for all random numbers\n-id: number of the exercise of the seed, default=0\n");
+                return;
+            }
+            try
+            {
+                ExercisePool.Ready ready = requestSeed == null && pool != null ? pool.take(s) : null;
+                if (ready == null)
+                {
+                    long exerciseSeed = requestSeed == null ? new SplittableRandom().nextLong() : requestSeed;
+                    int maxAttempts = Plan.cached(s).maxAttempts();
+                    ready = new ExercisePool.Ready(exerciseSeed, generateExercise(s, exerciseSeed + " " + number,
+                            getRandom(exerciseSeed, number), maxAttempts));
+                }
+                else
+                    number = 0;
+                send(exchange, 200, "application/json", toJson(ready.exercise(), s, ready.seed(), number));
+            } catch (IllegalArgumentException | IllegalStateException e) //no network found for the parameters
+            {
+                send(exchange, 422, "text/plain", e.getMessage() + "\n");
+            } catch (RuntimeException e)
+            {
+                send(exchange, 500, "text/plain", e.toString());
+            }
         }
-    }
 
-    static class Inductor extends Component {
-        double L;
+        /**
+         * returns the query parameters with a - in front of every name, like the options of readArgs
+         */
+        static HashMap<String, String> readQuery(String query) {
+            HashMap<String, String> map = new HashMap<>();
+            if (query == null || query.isEmpty())
+                return map;
+            for (String parameter : query.split("&"))
+            {
+                int split = parameter.indexOf('=');
+                if (split < 0)
+                    throw new IllegalArgumentException(parameter);
+                String name = URLDecoder.decode(parameter.substring(0, split), StandardCharsets.UTF_8);
+                map.put(name.startsWith("-") ? name : "-" + name, URLDecoder.decode(parameter.substring(split + 1), StandardCharsets.UTF_8));
+            }
+            return map;
+        }
 
-        public Inductor(String name, double L) {
-            this.name = name;
-            this.L = L;
+        /**
+         * the texts are named like the files (e.g. "t0 Solution" is t0Solution), a png is encoded with base64
+         */
+        static String toJson(Exercise exercise, Settings s, long seed, long number) throws IOException {
+            StringBuilder json = new StringBuilder("{\"seed\": ").append(seed).append(", \"id\": ").append(number);
+            for (String text : exercise.getTextNames(s))
+            {
+                StringWriter writer = new StringWriter();
+                exercise.writeText(text, writer);
+                String key = Character.toLowerCase(text.charAt(0)) + text.substring(1).replace(" ", "");
+                json.append(", \"").append(key).append("\": ").append(jsonString(writer.toString()));
+            }
+            if (!s.imageConf.equals("none"))
+            {
+                ByteArrayOutputStream image = new ByteArrayOutputStream();
+                writeImage(exercise.network, s, image);
+                String data = s.imageConf.equals("png") ? Base64.getEncoder().encodeToString(image.toByteArray())
+                        : image.toString(StandardCharsets.UTF_8);
+                json.append(", \"imageFormat\": \"").append(s.imageConf).append("\", \"image\": ").append(jsonString(data));
+            }
+            return json.append("}\n").toString();
         }
 
-        public double getResistance(boolean t0) {
-            return t0 ? Double.POSITIVE_INFINITY : 0;
+        static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(bytes);
+            }
         }
+    }
 
-        public String toString() {
-            return "L";
+    /**
+     * returns s as a JSON string with quotes
+     */
+    static String jsonString(String s) {
+        StringBuilder res = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+                case '"' -> res.append("\\\"");
+                case '\\' -> res.append("\\\\");
+                case '\n' -> res.append("\\n");
+                case '\r' -> res.append("\\r");
+                case '\t' -> res.append("\\t");
+                default ->
+                {
+                    if (c < 0x20)
+                        res.append(String.format("\\u%04x", (int) c));
+                    else
+                        res.append(c);
+                }
+            }
         }
+        return res.append('"').toString();
     }
 }
@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RCLNetworkCreatorTest {
+
+    /**
+     * every small combination of components can be arranged within -maxComp 2 and 3 without useless resistors, e.g.
+     * Serial(R,Parallel(C,C)), so the generator has to find such a network in a few attempts
+     */
+    @Test
+    void smallNetworksGenerateWithinAttempts() {
+        for (int maxComp = 2; maxComp <= 3; maxComp++)
+            for (int r = 1; r <= 4; r++)
+                for (int c = 0; c <= 3; c++)
+                    for (int l = 0; l <= 3; l++)
+                    {
+                        RCLNetworkCreator.Settings s = new RCLNetworkCreator.Settings(r, c, l, 5, 20, 2, 12, maxComp, 0,
+                                "both", "none", 25, 50, 15);
+                        SplittableRandom random = new SplittableRandom(r * 1000 + c * 100 + l * 10 + maxComp);
+                        String name = "R" + r + " C" + c + " L" + l + " maxComp " + maxComp;
+                        for (int i = 0; i < 10; i++)
+                            assertDoesNotThrow(() -> RCLNetworkCreator.generateExercise(s, name, random, 100), name);
+                    }
+    }
+
+    /**
+     * exercises are created from seed and number, runs with other seeds must not create the same exercises shifted
+     * by a few numbers
+     */
+    @Test
+    void differentSeedsDontShareExercises() {
+        RCLNetworkCreator.Settings s = new RCLNetworkCreator.Settings(7, 1, 1, 5, 20, 2, 12, 3, 3, "both", "none", 25, 50,
+                15);
+        HashSet<String> exercises = new HashSet<>();
+        for (long seed = 1; seed <= 8; seed++)
+            for (long number = 1; number <= 8; number++)
+            {
+                RCLNetworkCreator.Exercise exercise = RCLNetworkCreator.generateExercise(s, "test",
+                        RCLNetworkCreator.getRandom(seed, number), 1000);
+                String key = exercise.voltage + " " + exercise.network.getCanonicalHash(true);
+                assertTrue(exercises.add(key), "seed " + seed + " exercise " + number + " was created before");
+            }
+    }
+
+    /**
+     * the pilot of a profile must not reject settings the generator can meet
+     */
+    @Test
+    void pilotAcceptsSmallProfiles() {
+        int[][] components = {{1, 2, 0}, {1, 0, 2}, {2, 0, 1}};
+        for (int[] c : components)
+        {
+            RCLNetworkCreator.Settings s = new RCLNetworkCreator.Settings(c[0], c[1], c[2], 5, 20, 2, 12, 2, 0, "both",
+                    "none", 25, 50, 15);
+            assertDoesNotThrow(() -> RCLNetworkCreator.Plan.of("small", s), s.toString());
+        }
+    }
+}